@@ -0,0 +1,49 @@
+/**
+ * Benchmarks bestGuess() at every depth, from the computer having just taken the center.
+ * The transposition table is cleared before every search so each depth is searched in full.
+ */
+
+package TicTacToe;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BestGuessBenchmark
+{
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+    public int level;
+
+    private TicTacToe game;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        game = EngineBenchmark.parse("----2----");
+    }
+
+    @Benchmark
+    public int bestGuess()
+    {
+        TicTacToe.getTranspositionTable().clear();
+        return game.bestGuess(level);
+    }
+}
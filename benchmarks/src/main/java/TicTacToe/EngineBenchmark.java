@@ -0,0 +1,104 @@
+/**
+ * Benchmarks for the engine's hot paths on a handful of positions with the computer to move.
+ *
+ * Boards are given as gridStatus strings (see TicTacToe.drawBoard()).  The tablebase is never loaded,
+ * so bestMove() searches unless the move cache has the position.
+ */
+
+package TicTacToe;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark
+{
+    /**
+     * The empty board, the player holding the center, and three mid-game positions.
+     */
+    @Param({"---------", "----1----", "1---2---1", "12-21-1--", "1-221-1--"})
+    public String board;
+
+    private TicTacToe game;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        TicTacToe.setTablebase(null);
+        game = parse(board);
+    }
+
+    /**
+     * A search that can't lean on earlier ones, as for the first game after the server starts.
+     */
+    @Benchmark
+    public int bestMoveCold()
+    {
+        TicTacToe.getTranspositionTable().clear();
+        TicTacToe.getMoveCache().clear();
+        return game.bestMove();
+    }
+
+    /**
+     * A lookup of a position the move cache already holds, as on a busy server.
+     */
+    @Benchmark
+    public int bestMoveWarm()
+    {
+        return game.bestMove();
+    }
+
+    @Benchmark
+    public int result()
+    {
+        return game.result();
+    }
+
+    @Benchmark
+    public int[] generateLegalMoves()
+    {
+        return game.generateLegalMoves();
+    }
+
+    @Benchmark
+    public String drawBoard()
+    {
+        return game.drawBoard();
+    }
+
+    /**
+     * Returns a game holding a gridStatus board, with the computer to move.
+     */
+    static TicTacToe parse(String gridState)
+    {
+        TicTacToe game = new TicTacToe();
+
+        for(int i = 0; i < 9; i++)
+        {
+            if(gridState.charAt(i) == '1') game.placePiece(game.getPLAYER_TURN(), i);
+            else if(gridState.charAt(i) == '2') game.placePiece(game.getCOMPUTER_TURN(), i);
+        }
+
+        game.setWhoseTurn(game.getCOMPUTER_TURN());
+
+        return game;
+    }
+}
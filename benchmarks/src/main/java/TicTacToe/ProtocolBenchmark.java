@@ -0,0 +1,118 @@
+/**
+ * Benchmarks one turn of a text protocol game over a loopback connection: the client sends its move
+ * and waits for the board the server answers with after the computer's reply.  When a game ends,
+ * the turn also asks for a new game and reads its first board.
+ */
+
+package TicTacToe;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark
+{
+    private ServerSocket welcomeSocket;
+    private Thread serverThread;
+
+    private Socket socket;
+    private PrintWriter out;
+    private BufferedReader in;
+
+    // The board the server sent last.
+    private String board;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        // ServerGame reports every game on the console; keep that out of the measurements.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        welcomeSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        serverThread = new Thread(this::serve, "ServerGame");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        socket = new Socket(InetAddress.getLoopbackAddress(), welcomeSocket.getLocalPort());
+        socket.setTcpNoDelay(true);
+        out = new PrintWriter(socket.getOutputStream(), true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+
+        board = in.readLine();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        socket.close();
+        welcomeSocket.close();
+    }
+
+    @Benchmark
+    public String turn() throws IOException
+    {
+        out.println(board.indexOf('-'));
+        board = in.readLine();
+
+        if(board.charAt(0) == '#')
+        {
+            out.println("#NG");
+            board = in.readLine();
+        }
+
+        return board;
+    }
+
+    /**
+     * Plays the benchmark's games the way Server does.
+     */
+    private void serve()
+    {
+        try(Socket connectionSocket = welcomeSocket.accept())
+        {
+            connectionSocket.setTcpNoDelay(true);
+
+            BufferedReader clientInput = new BufferedReader(
+                    new InputStreamReader(connectionSocket.getInputStream(), StandardCharsets.ISO_8859_1));
+            DataOutputStream serverOutput = new DataOutputStream(new BufferedOutputStream(connectionSocket.getOutputStream()));
+
+            new ServerGame(clientInput, serverOutput).start();
+        }
+
+        catch(IOException | RuntimeException e)
+        {
+            // The benchmark closed the connection.
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Checks the answers of the stateless move protocol (MoveService) and of batches (BatchMoveService),
+ * which share its board parser: impossible boards and lines that aren't requests are answered with "#E",
+ * and finished boards with their result rather than a move.
+ */
+
+package TicTacToe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class MoveServiceTest
+{
+    @Test
+    void answersTheComputersMove()
+    {
+        // The computer completes its bottom row rather than blocking the player's middle one.
+        assertEquals("8 2\n", MoveService.answer("#MV ---11-22- 2"));
+
+        String[] answer = MoveService.answer("#MV --------- 2").trim().split(" ");
+        int move = Integer.parseInt(answer[0]);
+
+        assertTrue(move >= 0 && move < 9, "move " + move);
+        assertEquals("0", answer[1]);
+    }
+
+    @Test
+    void answersThePlayersTurnWithoutAMove()
+    {
+        assertEquals("-1 0\n", MoveService.answer("#MV --------- 1"));
+        assertEquals("-1 0\n", MoveService.answer("#MV ----2---- 1"));
+    }
+
+    @Test
+    void refusesBoardsWhereTheSideToMoveIsAhead()
+    {
+        assertEquals("#E\n", MoveService.answer("#MV 1-------- 1"));
+        assertEquals("#E\n", MoveService.answer("#MV 2-------- 2"));
+        assertEquals("#E\n", MoveService.answer("#MV 12-1----- 1"));
+    }
+
+    @Test
+    void refusesBoardsWhereTheSideToMoveIsMoreThanOneBehind()
+    {
+        assertEquals("#E\n", MoveService.answer("#MV 11------- 2"));
+        assertEquals("#E\n", MoveService.answer("#MV 22------- 1"));
+        assertEquals("#E\n", MoveService.answer("#MV 111-2---- 2"));
+    }
+
+    @Test
+    void refusesBoardsWhereBothSidesHaveALine()
+    {
+        assertEquals("#E\n", MoveService.answer("#MV 111222--- 2"));
+        assertEquals("#E\n", MoveService.answer("#MV 3x3x3:111222--- 2"));
+    }
+
+    @Test
+    void answersFinishedBoardsWithTheirResult()
+    {
+        assertEquals("-1 1\n", MoveService.answer("#MV 111-22--- 2"));
+        assertEquals("-1 2\n", MoveService.answer("#MV 222-11-1- 1"));
+        assertEquals("-1 3\n", MoveService.answer("#MV 121112212 2"));
+        assertEquals("-1 1\n", MoveService.answer("#MV 3x3x3:111-22--- 2"));
+    }
+
+    @Test
+    void answersMNKBoards()
+    {
+        // Only 2 completes three in a row, and the player has nothing to block.
+        assertEquals("2 2\n", MoveService.answer("#MV 4x4x3:22----------1--1 2"));
+
+        String[] answer = MoveService.answer("#MV 5x5x4:------------------------- 2").trim().split(" ");
+        int move = Integer.parseInt(answer[0]);
+
+        assertTrue(move >= 0 && move < 25, "move " + move);
+        assertEquals("0", answer[1]);
+    }
+
+    @Test
+    void refusesMalformedDimensions()
+    {
+        String[] boards = {
+            "3x3:---------",
+            "3x3x:---------",
+            "3x3x3x3:---------",
+            "axbxc:---------",
+            ":---------",
+            "x:---------",
+            "3x3x9:---------",
+            "3x3x1:---------",
+            "0x9x3:---------",
+            "-3x-3x3:---------",
+            "3x3x3:--------",
+            "4x4x3:---------",
+            "3x3x3---------",
+        };
+
+        for(String board : boards)
+        {
+            assertEquals("#E\n", MoveService.answer("#MV " + board + " 2"), board);
+        }
+    }
+
+    @Test
+    void answersBlankAndGarbageLinesWithAnError()
+    {
+        String[] requests = {
+            "",
+            "   ",
+            "\t",
+            "hello",
+            "#MV",
+            "#MV ---------",
+            "#MV --------- 3",
+            "#MV --------- two",
+            "#MV --------- 2 2",
+            "#mv --------- 2",
+            "#MV --------x 2",
+            "#MV ---------- 2",
+            "#MV -------- 2",
+            "#NG",
+        };
+
+        for(String request : requests)
+        {
+            assertEquals("#E\n", MoveService.answer(request), "\"" + request + "\"");
+        }
+    }
+
+    @Test
+    void batchAnswersTheComputersMoveAndValue()
+    {
+        assertEquals("8 100\n", BatchMoveService.answer("---11-22-"));
+
+        // The player's corner is answered with the centre, after which the game is a tie.
+        assertEquals("4 50\n", BatchMoveService.answer("1--------"));
+    }
+
+    @Test
+    void batchAnswersFinishedBoardsWithTheirJudgement()
+    {
+        assertEquals("-1 0\n", BatchMoveService.answer("111-22---"));
+        assertEquals("-1 50\n", BatchMoveService.answer("121112212"));
+    }
+
+    @Test
+    void batchRefusesWhatIsNotAPossible3x3Board()
+    {
+        String[] boards = {"", "hello", "1-------", "11-------", "111222---", "3x3x3:---------", "4x4x3:----------------"};
+
+        for(String board : boards)
+        {
+            assertEquals("#E\n", BatchMoveService.answer(board), "\"" + board + "\"");
+        }
+    }
+}
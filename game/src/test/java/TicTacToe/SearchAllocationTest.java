@@ -0,0 +1,109 @@
+/**
+ * Checks that the computer's search allocates nothing once the JIT has compiled it, as measured by the
+ * per-thread allocation counter of ThreadMXBean.
+ */
+
+package TicTacToe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class SearchAllocationTest
+{
+    // The positions searched: the player's moves and the computer's replies, alternately.
+    private static final int[][] OPENINGS = {{}, {4}, {0}, {1, 4}, {0, 8}, {4, 0, 8}};
+
+    // The calls measured per round, and how long the JIT gets to compile the search before it must be free.
+    // Compiling happens in the background, so the limit is on time rather than on rounds.
+    private static final int CALLS = 1000;
+    private static final Duration SETTLE_TIME = Duration.ofSeconds(20);
+
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final TicTacToe game = new TicTacToe();
+
+
+    @Test
+    void bestMoveAllocatesNothing()
+    {
+        assertEquals(0, settledBytesPerCall(game::bestMove));
+    }
+
+    @Test
+    void searchAllocatesNothing()
+    {
+        assertEquals(0, settledBytesPerCall(game::searchBestMove));
+    }
+
+    @Test
+    void timedSearchAllocatesNothing()
+    {
+        Duration budget = Duration.ofSeconds(10);
+
+        // Emptying the cache first makes every call search, as the server's moves do.
+        assertEquals(0, settledBytesPerCall(() ->
+        {
+            TicTacToe.getMoveCache().clear();
+            return game.bestMove(budget);
+        }));
+    }
+
+    @Test
+    void bestGuessAllocatesNothing()
+    {
+        assertEquals(0, settledBytesPerCall(() -> game.bestGuess(8)));
+    }
+
+    /**
+     * Measures CALLS calls of search on each opening in turn until a round allocates nothing, or
+     * SETTLE_TIME has passed.  Returns the bytes per call of the last round.
+     */
+    private long settledBytesPerCall(Search search)
+    {
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        long thread = Thread.currentThread().threadId();
+        long deadline = System.nanoTime() + SETTLE_TIME.toNanos();
+        long bytes = -1;
+
+        while(bytes != 0 && System.nanoTime() < deadline)
+        {
+            long before = threads.getThreadAllocatedBytes(thread);
+
+            for(int i = 0; i < CALLS; i++)
+            {
+                play(OPENINGS[i % OPENINGS.length]);
+                search.run();
+            }
+
+            bytes = (threads.getThreadAllocatedBytes(thread) - before) / CALLS;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Sets the game up with moves played alternately by the player and the computer, from the player.
+     */
+    private void play(int[] moves)
+    {
+        game.reset();
+
+        for(int i = 0; i < moves.length; i++)
+        {
+            game.placePiece((i % 2 == 0) ? game.getPLAYER_TURN() : game.getCOMPUTER_TURN(), moves[i]);
+        }
+    }
+
+    /**
+     * One of the searches being measured.
+     */
+    private interface Search
+    {
+        int run();
+    }
+}
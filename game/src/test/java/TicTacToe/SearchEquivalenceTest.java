@@ -0,0 +1,189 @@
+/**
+ * Checks the computer's searches against a plain minimax over every position the computer can be asked
+ * to move in: the alpha-beta search, bestMove() answered from the move cache, and the parallel root
+ * search must all choose the lowest of the best grids, as minimax does.
+ */
+
+package TicTacToe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SearchEquivalenceTest
+{
+    // Every position reachable with the computer to move and the game still on, as drawBoard() draws it.
+    private static final List<String> POSITIONS = computerPositions();
+
+
+    @AfterEach
+    void searchOnOneThread()
+    {
+        TicTacToe.setParallelSearch(false);
+    }
+
+    @Test
+    void everyPositionIsChecked()
+    {
+        assertEquals(4520, POSITIONS.size());
+    }
+
+    @Test
+    void alphaBetaMatchesMinimax()
+    {
+        for(String position : POSITIONS)
+        {
+            TicTacToe game = game(position);
+            assertEquals(minimaxMove(game), game.searchBestMove(), position);
+        }
+    }
+
+    @Test
+    void cachedBestMoveMatchesMinimax()
+    {
+        TicTacToe.getMoveCache().clear();
+
+        for(String position : POSITIONS)
+        {
+            TicTacToe game = game(position);
+            int expected = minimaxMove(game);
+
+            // The first call searches and fills the cache; the second must be answered from it.
+            assertEquals(expected, game.bestMove(), position);
+
+            long hits = TicTacToe.getMoveCache().getHits();
+            assertEquals(expected, game.bestMove(), position);
+            assertTrue(TicTacToe.getMoveCache().getHits() > hits, position);
+        }
+    }
+
+    @Test
+    void parallelSearchMatchesMinimax()
+    {
+        TicTacToe.setParallelSearch(true);
+
+        for(String position : POSITIONS)
+        {
+            TicTacToe game = game(position);
+            assertEquals(minimaxMove(game), game.searchBestMove(), position);
+        }
+    }
+
+    /**
+     * Returns the lowest grid among the computer's moves with the best minimax value.
+     */
+    private static int minimaxMove(TicTacToe game)
+    {
+        int best = -1, bestValue = -1;
+
+        for(int move = 0; move < 9; move++)
+        {
+            if(game.legalMove(move))
+            {
+                game.placePiece(game.getCOMPUTER_TURN(), move);
+                int value = minimax(game, false);
+                game.undoMove(move);
+
+                if(value > bestValue)
+                {
+                    bestValue = value;
+                    best = move;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns judge()'s value of the game with both sides playing their best to the end, the computer
+     * maximizing and the player minimizing.
+     */
+    private static int minimax(TicTacToe game, boolean computerMoves)
+    {
+        if(game.isOver())
+        {
+            return game.judge();
+        }
+
+        int bestValue = computerMoves ? -1 : 101;
+
+        for(int move = 0; move < 9; move++)
+        {
+            if(game.legalMove(move))
+            {
+                game.placePiece(computerMoves ? game.getCOMPUTER_TURN() : game.getPLAYER_TURN(), move);
+                int value = minimax(game, !computerMoves);
+                game.undoMove(move);
+
+                bestValue = computerMoves ? Math.max(bestValue, value) : Math.min(bestValue, value);
+            }
+        }
+
+        return bestValue;
+    }
+
+    /**
+     * Returns a game with the board drawBoard() would draw as position.
+     */
+    private static TicTacToe game(String position)
+    {
+        TicTacToe game = new TicTacToe();
+
+        for(int i = 0; i < 9; i++)
+        {
+            if(position.charAt(i) == '1') game.placePiece(game.getPLAYER_TURN(), i);
+            else if(position.charAt(i) == '2') game.placePiece(game.getCOMPUTER_TURN(), i);
+        }
+
+        return game;
+    }
+
+    /**
+     * Collects the positions the computer can be asked to move in, whichever side went first.
+     */
+    private static List<String> computerPositions()
+    {
+        Set<String> positions = new HashSet<>();
+        TicTacToe game = new TicTacToe();
+
+        collect(game, game.getPLAYER_TURN(), positions);
+        collect(game, game.getCOMPUTER_TURN(), positions);
+
+        List<String> sorted = new ArrayList<>(positions);
+        sorted.sort(null);
+
+        return sorted;
+    }
+
+    private static void collect(TicTacToe game, int toMove, Set<String> positions)
+    {
+        if(game.isOver())
+        {
+            return;
+        }
+
+        if(toMove == game.getCOMPUTER_TURN())
+        {
+            positions.add(game.drawBoard().trim());
+        }
+
+        int next = (toMove == game.getPLAYER_TURN()) ? game.getCOMPUTER_TURN() : game.getPLAYER_TURN();
+
+        for(int move = 0; move < 9; move++)
+        {
+            if(game.legalMove(move))
+            {
+                game.placePiece(toMove, move);
+                collect(game, next, positions);
+                game.undoMove(move);
+            }
+        }
+    }
+}
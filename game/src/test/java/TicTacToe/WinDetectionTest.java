@@ -0,0 +1,130 @@
+/**
+ * Checks the engines' constant-time win detection against a scan of every line on the board, over
+ * seeded random games in which moves are played and taken back.
+ */
+
+package TicTacToe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class WinDetectionTest
+{
+    // The m,n,k boards played on, as rows, columns and the line length that wins.
+    private static final int[][] BOARDS = {{3, 3, 3}, {4, 4, 3}, {5, 5, 4}, {6, 7, 4}, {3, 8, 3}, {7, 7, 5}, {10, 10, 5}};
+
+    private static final int STEPS = 200_000;
+
+
+    @Test
+    void ticTacToeAgreesWithScan()
+    {
+        play(new TicTacToe(), 3, 3, 3, new Random(11));
+    }
+
+    @Test
+    void mnkGameAgreesWithScan()
+    {
+        Random random = new Random(13);
+
+        for(int[] board : BOARDS)
+        {
+            assertTrue(MNKGame.isPlayable(board[0], board[1], board[2]));
+            play(new MNKGame(board[0], board[1], board[2]), board[0], board[1], board[2], random);
+        }
+    }
+
+    /**
+     * Plays and takes back random moves on game, comparing result() with a scan after every step.
+     * Moves are taken back at random, and always once the game is over.
+     */
+    private static void play(BoardGame game, int rows, int columns, int winLength, Random random)
+    {
+        Deque<Integer> played = new ArrayDeque<>();
+        List<Integer> free = new ArrayList<>();
+
+        for(int step = 0; step < STEPS; step++)
+        {
+            boolean undo = !played.isEmpty() && (game.isOver() || random.nextInt(4) == 0);
+
+            if(undo)
+            {
+                game.undoMove(played.pop());
+            }
+
+            else
+            {
+                free.clear();
+
+                for(int move = 0; move < rows * columns; move++)
+                {
+                    if(game.legalMove(move))
+                    {
+                        free.add(move);
+                    }
+                }
+
+                int player = (played.size() % 2 == 0) ? game.getPLAYER_TURN() : game.getCOMPUTER_TURN();
+                int move = free.get(random.nextInt(free.size()));
+
+                game.placePiece(player, move);
+                played.push(move);
+            }
+
+            assertEquals(scanResult(game, rows, columns, winLength), game.result(),
+                    () -> "after " + (undo ? "taking back a move" : "a move") + " on " + game.drawBoard());
+        }
+    }
+
+    /**
+     * Returns result() for game as found by looking along every row, column and diagonal of the board
+     * drawBoard() draws.
+     */
+    private static int scanResult(BoardGame game, int rows, int columns, int winLength)
+    {
+        String board = game.drawBoard().trim();
+        String cells = board.substring(board.indexOf(':') + 1);
+
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+        for(int row = 0; row < rows; row++)
+        {
+            for(int column = 0; column < columns; column++)
+            {
+                char piece = cells.charAt(row * columns + column);
+
+                if(piece == '-')
+                {
+                    continue;
+                }
+
+                for(int[] direction : directions)
+                {
+                    int length = 1;
+                    int r = row + direction[0], c = column + direction[1];
+
+                    while(r >= 0 && r < rows && c >= 0 && c < columns && cells.charAt(r * columns + c) == piece)
+                    {
+                        length++;
+                        r += direction[0];
+                        c += direction[1];
+                    }
+
+                    if(length >= winLength)
+                    {
+                        return piece - '0';
+                    }
+                }
+            }
+        }
+
+        return (cells.indexOf('-') < 0) ? 3 : 0;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Answers batches of 3x3 boards over HTTP, for services that want the computer's moves for many boards
+ * at once rather than playing a game on each.
+ *
+ * A batch is POSTed to /moves as one board per line, in the form drawBoard() sends it, with the computer
+ * to move.  Every line is answered on a line of its own, in the order the lines were sent:
+ *
+ * "<move> <value>" -- the computer's best move (-1 if the game is already over) and the value of the
+ *                     board after it, as in bestGuess(): 100 the computer wins, 50 a tie, 0 it loses
+ * "#E"             -- the line isn't a board that can arise in a game
+ *
+ * For example, "curl --data-binary @boards.txt http://localhost:9991/moves".  Boards are handed to a
+ * pool of workers shared by every batch as soon as they are read, a bounded number ahead of the answers
+ * still to be written, and answers are streamed back as they are ready, so a batch of any size is never
+ * held in memory whole.
+ */
+
+package TicTacToe;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchMoveService
+{
+    // The searches are CPU bound, so there is one worker per core however many batches arrive.
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService workers = Executors.newFixedThreadPool(WORKERS,
+            Thread.ofPlatform().name("TTT batch-", 0).daemon().factory());
+
+    // The most boards of one batch being answered at once, ahead of the oldest answer not yet written.
+    private static final int WINDOW = 4 * WORKERS;
+
+
+    private BatchMoveService()
+    {
+    }
+
+    /**
+     * Serves batches at http://<host>:port/moves, reading each request on a virtual thread of its own.
+     * Returns the HTTP server so it can be stopped.
+     */
+    public static HttpServer publish(int port) throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/moves", BatchMoveService::handle);
+        server.start();
+
+        return server;
+    }
+
+    /**
+     * Answers one batch, writing the answers in order while later boards are still being read and searched.
+     */
+    private static void handle(HttpExchange exchange) throws IOException
+    {
+        try(exchange)
+        {
+            if(!exchange.getRequestMethod().equals("POST"))
+            {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.ISO_8859_1));
+            Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.ISO_8859_1));
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=iso-8859-1");
+
+            // A length of 0 sends the answers chunked, as they are written.
+            exchange.sendResponseHeaders(200, 0);
+
+            Queue<CompletableFuture<String>> pending = new ArrayDeque<>(WINDOW);
+            String board;
+
+            // Every line is answered, even a blank one, so answers can be matched to lines by position.
+            while((board = in.readLine()) != null)
+            {
+                String request = board.trim();
+                pending.add(CompletableFuture.supplyAsync(() -> answer(request), workers));
+
+                if(pending.size() >= WINDOW)
+                {
+                    write(out, pending.remove());
+                }
+            }
+
+            while(!pending.isEmpty())
+            {
+                write(out, pending.remove());
+            }
+
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes an answer once it is ready, first sending on those already written if it has to be waited for.
+     */
+    private static void write(Writer out, CompletableFuture<String> answer) throws IOException
+    {
+        if(!answer.isDone())
+        {
+            out.flush();
+        }
+
+        out.write(answer.join());
+    }
+
+    /**
+     * Returns the answer to one board, ending with a line break.
+     */
+    static String answer(String board)
+    {
+        if(!(MoveService.parseBoard(board, 2) instanceof TicTacToe game))
+        {
+            Metrics.get().invalidRequest();
+            return ServerGame.INVALID_MOVE;
+        }
+
+        if(game.isOver())
+        {
+            return "-1 " + game.judge() + "\n";
+        }
+
+        int move = game.bestMove();
+        game.placePiece(game.getCOMPUTER_TURN(), move);
+
+        return move + " " + game.bestGuess(8) + "\n";
+    }
+}
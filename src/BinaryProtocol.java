@@ -0,0 +1,104 @@
+/**
+ * Constants and helpers for the compact binary form of the server's protocol.
+ *
+ * A client asks for it by sending HANDSHAKE as soon as it connects.  The server still sends its first
+ * board as text (it can't know what the client speaks until the client has spoken), then answers the
+ * handshake with HANDSHAKE and switches to binary for the rest of the connection.  Clients that never
+ * send the handshake keep the text protocol.
+ *
+ * In binary, the server sends one 4-byte frame per turn: a status byte followed by the board packed
+ * into 18 bits (see TicTacToe.getPackedBoard()).  The status matches TicTacToe.result():
+ * 0 - it is the user's move
+ * 1 - the player has won
+ * 2 - the computer has won
+ * 3 - the game is a tie
+ * 4 - the move the user sent can't be played, so they should send another (see INVALID_MOVE)
+ *
+ * The client answers with single bytes: a move 0-8, or NEW_GAME or CLOSE_GAME once the game is over.
+ */
+
+package TicTacToe;
+
+public class BinaryProtocol
+{
+    /**
+     * Sent by the client to ask for the binary protocol and echoed by the server to accept it.
+     * It can't be mistaken for anything sent in the text protocol.
+     */
+    public static final int HANDSHAKE = 0xB1;
+
+    /**
+     * The status of a frame asking the user for their move.
+     */
+    public static final int YOUR_MOVE = 0;
+
+    /**
+     * The status of a frame asking the user for another move, because their last one was illegal.
+     * The board is unchanged.
+     */
+    public static final int INVALID_MOVE = 4;
+
+    /**
+     * Sent by the client after a game to play another one or to close the connection.
+     */
+    public static final int NEW_GAME   = 0x40;
+    public static final int CLOSE_GAME = 0x41;
+
+    /**
+     * The size of a frame in bytes.
+     */
+    public static final int FRAME_SIZE = 4;
+
+    // The board takes the low 18 bits of a frame: the player's grids, then the computer's.
+    private static final int BOARD_MASK = 0x3FFFF;
+
+
+    private BinaryProtocol()
+    {
+    }
+
+    /**
+     * Returns the frame for a status and packed board.
+     */
+    public static int frame(int status, int packedBoard)
+    {
+        return (status << 24) | packedBoard;
+    }
+
+    /**
+     * Returns the status held in a frame.
+     */
+    public static int status(int frame)
+    {
+        return frame >>> 24;
+    }
+
+    /**
+     * Returns the packed board held in a frame.
+     */
+    public static int board(int frame)
+    {
+        return frame & BOARD_MASK;
+    }
+
+    /**
+     * Returns the 9 character gridStatus string for a packed board, as drawBoard() sends it in the
+     * text protocol but without the line break.
+     * player:     "1"
+     * computer:   "2"
+     * free space: "-"
+     */
+    public static String boardString(int packedBoard)
+    {
+        char[] grid = new char[9];
+
+        for(int i = 0; i < 9; i++)
+        {
+            if((packedBoard & (1 << i)) != 0) grid[i] = '1';
+            else if((packedBoard & (1 << (i + 9))) != 0) grid[i] = '2';
+            else grid[i] = '-';
+        }
+
+        return new String(grid);
+    }
+}
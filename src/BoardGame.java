@@ -0,0 +1,115 @@
+/**
+ * The operations ServerGame needs from a game between the player and the computer, so it can serve
+ * classic TicTacToe and the larger boards of MNKGame alike.
+ *
+ * Grids are numbered row by row from 0, and players are named by the games' {player}_TURN values.
+ */
+
+package TicTacToe;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public interface BoardGame
+{
+    /**
+     * The longest line drawBoard() returns for any game, in bytes.
+     */
+    int MAX_BOARD_LINE = 128;
+
+    /**
+     * Clears the board so the game can be played again, leaving the first player to be chosen.
+     */
+    void reset();
+
+    /**
+     * Returns a copy of this game that can be played on its own, such as by another thread.
+     */
+    BoardGame copy();
+
+    /**
+     * Randomly determines who will go first in this game.
+     */
+    void chooseFirstPlayer();
+
+    /**
+     * Returns a line describing the state of the board, which the client uses to draw it.
+     */
+    String drawBoard();
+
+    /**
+     * Puts the line drawBoard() returns into buffer, one byte per character, so it can be sent
+     * without building a String.
+     */
+    void drawBoard(ByteBuffer buffer);
+
+    /**
+     * Returns whether a proposed move is legal.
+     */
+    boolean legalMove(int move);
+
+    /**
+     * Chooses and makes the computer's move.
+     */
+    void computerMove();
+
+    /**
+     * Chooses and makes the computer's move, taking no longer than about budget to choose it.
+     */
+    void computerMove(Duration budget);
+
+    /**
+     * Returns the move computerMove(budget) would make.
+     */
+    int bestMove(Duration budget);
+
+    /**
+     * Returns the move bestMove(budget) would make, for a move the computer is only thinking ahead about.
+     * The search gives up and -1 is returned as soon as cancelled is set, and it isn't counted in the
+     * metrics.
+     */
+    int speculativeMove(Duration budget, AtomicBoolean cancelled);
+
+    /**
+     * Fills moves with the moves player ({player}_TURN) is most likely to make next, most likely first,
+     * and returns how many there are.  moves must have room for every grid.
+     */
+    int likelyMoves(int player, int[] moves);
+
+    /**
+     * Makes a move for player ({player}_TURN) at the specified grid.
+     */
+    void placePiece(int player, int move);
+
+    /**
+     * Takes back the piece at the specified grid, leaving it free.
+     */
+    void undoMove(int move);
+
+    /**
+     * Returns an integer value based on examining the state of the game:
+     * 0 - game is on-going
+     * 1 - player has won
+     * 2 - computer has won
+     * 3 - game is a tie
+     */
+    int result();
+
+    /**
+     * Returns true if the game is over or false if it is not.
+     */
+    boolean isOver();
+
+    int getWhoseTurn();
+
+    void setWhoseTurn(int whoseTurn);
+
+    int getFirstTurn();
+
+    void setFirstTurn(int firstTurn);
+
+    int getPLAYER_TURN();
+
+    int getCOMPUTER_TURN();
+}
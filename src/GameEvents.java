@@ -0,0 +1,99 @@
+/**
+ * Java Flight Recorder events for the computer's searches and the games played on the server, so
+ * recordings show which game a GC pause or a slow turn belonged to.
+ *
+ * Every event is disabled by default and costs next to nothing until a recording turns it on, e.g.
+ *     java -XX:StartFlightRecording:+TicTacToe.Search#enabled=true,+TicTacToe.Turn#enabled=true,
+ *          +TicTacToe.GameOver#enabled=true,filename=games.jfr -cp ... TicTacToe.Server
+ */
+
+package TicTacToe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+public class GameEvents
+{
+    private GameEvents()
+    {
+    }
+
+    /**
+     * The computer choosing a move.  The event's duration is how long it took.
+     */
+    @Name("TicTacToe.Search")
+    @Label("Computer Move Search")
+    @Category("TicTacToe")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Search extends Event
+    {
+        @Label("Source")
+        @Description("Where the move came from: tablebase, cache or search")
+        String source;
+
+        @Label("Depth")
+        @Description("How many moves beyond its own the deepest finished search looked")
+        int depth;
+
+        @Label("Nodes")
+        @Description("Positions the search visited")
+        long nodes;
+
+        @Label("Move")
+        int move;
+
+        @Label("Speculative")
+        @Description("Whether the computer was thinking ahead about a move the user hadn't made yet")
+        boolean speculative;
+    }
+
+    /**
+     * One turn of a game on the server.  For the player's turns, the event's duration is the wait for
+     * the user's move; for the computer's, the time taken to choose and make its move.
+     */
+    @Name("TicTacToe.Turn")
+    @Label("Turn")
+    @Category("TicTacToe")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Turn extends Event
+    {
+        @Label("Session")
+        long session;
+
+        @Label("Turn")
+        @Description("The turn's number within its game, from 1")
+        int turn;
+
+        @Label("Computer")
+        @Description("Whether the turn was the computer's")
+        boolean computer;
+    }
+
+    /**
+     * The end of a game on the server.
+     */
+    @Name("TicTacToe.GameOver")
+    @Label("Game Over")
+    @Category("TicTacToe")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class GameOver extends Event
+    {
+        @Label("Session")
+        long session;
+
+        @Label("Result")
+        @Description("player, computer or tie")
+        String result;
+
+        @Label("Turns")
+        int turns;
+    }
+}
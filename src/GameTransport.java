@@ -0,0 +1,32 @@
+/**
+ * How TicTacToeGUI reaches the game it plays: a connection to Server (SocketTransport) or an engine
+ * in the same process (LocalTransport).
+ *
+ * Either way, messages are in the text protocol's form (see ServerGame).  The GUI sends a move 0-8,
+ * "#NG" or "#CG", and receives a 9 character gridStatus, "#E", or "#P", "#C" or "#T".
+ *
+ * Whether a game's final board arrives before its result depends on the transport: LocalTransport and
+ * a binary SocketTransport send it, but the text protocol doesn't, so callers mustn't rely on it.
+ */
+
+package TicTacToe;
+
+import java.io.IOException;
+
+public interface GameTransport
+{
+    /**
+     * Sends a move or command to the game.
+     */
+    void send(String message) throws IOException;
+
+    /**
+     * Waits for the game's next command and returns it, or returns null once the game has closed.
+     */
+    String receive() throws IOException;
+
+    /**
+     * Closes the game.  A receive() that is waiting returns null.
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,120 @@
+/**
+ * A histogram of latencies in the style of HdrHistogram: values are counted in buckets whose width
+ * grows with the value, so every recorded value is kept to within 1% over the whole range of a long.
+ *
+ * Recording is lock-free and may happen from any number of threads at once.  The total is a LongAdder and
+ * the maximum is only written when it grows, so threads recording at once don't all contend on them.
+ */
+
+package TicTacToe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram
+{
+    /**
+     * Values below SUB_BUCKETS are counted exactly.  Above that, every power of two is split into
+     * SUB_BUCKETS / 2 buckets of equal width.
+     */
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+
+    /**
+     * Counts one occurrence of value, which must not be negative.
+     */
+    public void record(long value)
+    {
+        counts.incrementAndGet(index(value));
+        totalCount.increment();
+
+        long max = maxValue.get();
+        while(value > max && !maxValue.compareAndSet(max, value))
+        {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long getTotalCount()
+    {
+        return totalCount.sum();
+    }
+
+    /**
+     * Returns the largest value recorded.
+     */
+    public long getMaxValue()
+    {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the value that percentile (0-100) of the recorded values are at or below, rounded up to the
+     * top of its bucket.  Returns 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long total = totalCount.sum();
+        if(total == 0)
+        {
+            return 0;
+        }
+
+        long target = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+        long seen = 0;
+
+        for(int i = 0; i < counts.length(); i++)
+        {
+            seen += counts.get(i);
+
+            if(seen >= target)
+            {
+                return Math.min(highestValueAt(i), getMaxValue());
+            }
+        }
+
+        return getMaxValue();
+    }
+
+    /**
+     * Returns the bucket value falls in.
+     */
+    private static int index(long value)
+    {
+        if(value < SUB_BUCKETS)
+        {
+            return (int)value;
+        }
+
+        // Shift value down until it fits in the top half of the sub-buckets.
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int)((value >>> shift) - HALF_SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the largest value counted in bucket i.
+     */
+    private static long highestValueAt(int i)
+    {
+        if(i < SUB_BUCKETS)
+        {
+            return i;
+        }
+
+        int shift = (i - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (i - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * A headless client for load testing the Server.
+ *
+ * It runs any number of simulated players at once, each on its own virtual thread and connection.
+ * Every player plays game after game until the run is over, then reports games per second and the
+ * latency of every turn, from sending a move to receiving the board (or result) that answers it.
+ *
+ * Usage: java TicTacToe.LoadClient [option=value ...] [binary]
+ *   host      the server's address (127.0.0.1)
+ *   port      the server's port (9999)
+ *   players   how many players play at once (100)
+ *   seconds   how long to play for (30)
+ *   think     the average time in milliseconds a player thinks before each move (0)
+ *   strategy  how players choose their moves: random, optimal or scripted (random)
+ *   script    the grids a scripted player prefers, in order (4,0,2,6,8,1,3,5,7)
+ *   binary    speak the binary protocol (see BinaryProtocol) rather than text
+ */
+
+package TicTacToe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadClient
+{
+    /**
+     * How long a player waits for the server before giving up on its connection.
+     */
+    static int READ_TIMEOUT_MILLIS = 30000;
+
+    private String host = "127.0.0.1";
+    private int port = Server.PORT;
+    private int players = 100;
+    private int seconds = 30;
+    private int thinkMillis = 0;
+    private String strategy = "random";
+    private int[] script = {4, 0, 2, 6, 8, 1, 3, 5, 7};
+    private boolean binary = false;
+
+    private volatile boolean stopping = false;
+
+    private final LatencyHistogram turnLatency = new LatencyHistogram();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    // Games won by the player, won by the computer and tied, indexed as TicTacToe.result().
+    private final LongAdder[] results = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        LoadClient client = new LoadClient();
+
+        for(String arg : args)
+        {
+            client.configure(arg);
+        }
+
+        client.run();
+    }
+
+    /**
+     * Applies one option=value command line argument (or "binary").
+     */
+    private void configure(String arg)
+    {
+        if(arg.equals("binary"))
+        {
+            binary = true;
+            return;
+        }
+
+        int split = arg.indexOf('=');
+        if(split < 0)
+        {
+            throw new IllegalArgumentException("Expected option=value: " + arg);
+        }
+
+        String option = arg.substring(0, split), value = arg.substring(split + 1);
+
+        switch(option)
+        {
+            case "host":     host = value; break;
+            case "port":     port = Integer.parseInt(value); break;
+            case "players":  players = Integer.parseInt(value); break;
+            case "seconds":  seconds = Integer.parseInt(value); break;
+            case "think":    thinkMillis = Integer.parseInt(value); break;
+            case "strategy": strategy = value; break;
+            case "script":
+                String[] grids = value.split(",");
+                script = new int[grids.length];
+                for(int i = 0; i < grids.length; i++)
+                {
+                    script[i] = Integer.parseInt(grids[i].trim());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + option);
+        }
+
+        if(!strategy.equals("random") && !strategy.equals("optimal") && !strategy.equals("scripted"))
+        {
+            throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+    }
+
+    /**
+     * Plays with every player for the configured time, waits for their last games to end and reports.
+     */
+    public void run() throws InterruptedException
+    {
+        System.out.println("Playing with " + players + " " + strategy + " players against " + host + ":" + port +
+                " for " + seconds + " seconds" + (binary ? " over the binary protocol" : "") + "...");
+
+        long start = System.nanoTime();
+
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for(int i = 0; i < players; i++)
+            {
+                executor.execute(this::play);
+            }
+
+            Thread.sleep(seconds * 1000L);
+
+            // Let every player finish the game it is in; closing the executor waits for them.
+            stopping = true;
+        }
+
+        report((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Plays games over one connection until the run is over.
+     */
+    private void play()
+    {
+        try(Socket socket = new Socket(host, port))
+        {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+
+            Connection connection = binary ? new BinaryConnection(socket) : new TextConnection(socket);
+            int frame = connection.receive();
+            int board = 0;
+
+            while(true)
+            {
+                // A move the server won't play leaves the board as it was, and another is chosen.
+                while(BinaryProtocol.status(frame) == BinaryProtocol.YOUR_MOVE || BinaryProtocol.status(frame) == BinaryProtocol.INVALID_MOVE)
+                {
+                    if(BinaryProtocol.status(frame) == BinaryProtocol.YOUR_MOVE)
+                    {
+                        board = BinaryProtocol.board(frame);
+                    }
+
+                    think();
+                    int move = chooseMove(board);
+
+                    long sent = System.nanoTime();
+                    connection.sendMove(move);
+                    frame = connection.receive();
+
+                    turnLatency.record(System.nanoTime() - sent);
+                    turns.increment();
+                }
+
+                games.increment();
+                results[BinaryProtocol.status(frame)].increment();
+
+                connection.sendDecision(!stopping);
+                if(stopping)
+                {
+                    return;
+                }
+
+                frame = connection.receive();
+            }
+        }
+
+        catch(IOException | InterruptedException e)
+        {
+            errors.increment();
+            System.err.println("A player stopped: " + e);
+        }
+    }
+
+    /**
+     * Waits a random time averaging the configured think time.
+     */
+    private void think() throws InterruptedException
+    {
+        if(thinkMillis > 0)
+        {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(2L * thinkMillis + 1));
+        }
+    }
+
+    /**
+     * Chooses the player's move on a packed board according to the strategy.
+     */
+    private int chooseMove(int packedBoard)
+    {
+        int free = ~(packedBoard | (packedBoard >>> 9)) & 0x1FF;
+
+        if(strategy.equals("optimal"))
+        {
+            // Let the engine play the player's side: swap the pieces and ask for the computer's best move.
+            TicTacToe mirror = new TicTacToe();
+
+            for(int i = 0; i < 9; i++)
+            {
+                if((packedBoard & (1 << i)) != 0) mirror.placePiece(mirror.getCOMPUTER_TURN(), i);
+                else if((packedBoard & (1 << (i + 9))) != 0) mirror.placePiece(mirror.getPLAYER_TURN(), i);
+            }
+
+            mirror.setWhoseTurn(mirror.getCOMPUTER_TURN());
+            return mirror.bestMove();
+        }
+
+        if(strategy.equals("scripted"))
+        {
+            for(int move : script)
+            {
+                if((free & (1 << move)) != 0)
+                {
+                    return move;
+                }
+            }
+
+            return Integer.numberOfTrailingZeros(free);
+        }
+
+        // Pick one of the free grids at random.
+        int skip = ThreadLocalRandom.current().nextInt(Integer.bitCount(free));
+        for(int i = 0; i < skip; i++)
+        {
+            free &= free - 1;
+        }
+
+        return Integer.numberOfTrailingZeros(free);
+    }
+
+    private void report(double elapsedSeconds)
+    {
+        System.out.printf("Played %d games (%.1f games/sec) and %d turns in %.1f seconds.%n",
+                games.sum(), games.sum() / elapsedSeconds, turns.sum(), elapsedSeconds);
+        System.out.printf("Results: player %d, computer %d, tie %d.  Players lost to errors: %d.%n",
+                results[1].sum(), results[2].sum(), results[3].sum(), errors.sum());
+        System.out.printf("Turn latency: p50 %s, p99 %s, p99.9 %s, max %s%n",
+                micros(turnLatency.getValueAtPercentile(50)), micros(turnLatency.getValueAtPercentile(99)),
+                micros(turnLatency.getValueAtPercentile(99.9)), micros(turnLatency.getMaxValue()));
+    }
+
+    private static String micros(long nanos)
+    {
+        return String.format("%.1fus", nanos / 1000.0);
+    }
+
+    /**
+     * One player's connection to the server, in either protocol.
+     */
+    private interface Connection
+    {
+        /**
+         * Returns the server's next message as a binary frame (see BinaryProtocol).  The text protocol
+         * doesn't send the final board or resend the board after an illegal move, so result and
+         * INVALID_MOVE frames from a text connection hold an empty one.
+         */
+        int receive() throws IOException;
+
+        void sendMove(int move) throws IOException;
+
+        void sendDecision(boolean playAgain) throws IOException;
+    }
+
+    private static class TextConnection implements Connection
+    {
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+
+        TextConnection(Socket socket) throws IOException
+        {
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            out = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        public int receive() throws IOException
+        {
+            String line = in.readLine();
+            if(line == null)
+            {
+                throw new EOFException("The server closed the connection.");
+            }
+
+            switch(line)
+            {
+                case "#P": return BinaryProtocol.frame(1, 0);
+                case "#C": return BinaryProtocol.frame(2, 0);
+                case "#T": return BinaryProtocol.frame(3, 0);
+                case "#E": return BinaryProtocol.frame(BinaryProtocol.INVALID_MOVE, 0);
+            }
+
+            int packedBoard = 0;
+            for(int i = 0; i < 9; i++)
+            {
+                if(line.charAt(i) == '1') packedBoard |= 1 << i;
+                else if(line.charAt(i) == '2') packedBoard |= 1 << (i + 9);
+            }
+
+            return BinaryProtocol.frame(BinaryProtocol.YOUR_MOVE, packedBoard);
+        }
+
+        public void sendMove(int move)
+        {
+            out.println(move);
+        }
+
+        public void sendDecision(boolean playAgain)
+        {
+            out.println(playAgain ? "#NG" : "#CG");
+        }
+    }
+
+    private static class BinaryConnection implements Connection
+    {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+
+        /**
+         * Connects and asks for the binary protocol, skipping the first board the server sends as text.
+         */
+        BinaryConnection(Socket socket) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            out.write(BinaryProtocol.HANDSHAKE);
+            out.flush();
+
+            while(in.readUnsignedByte() != BinaryProtocol.HANDSHAKE)
+            {
+            }
+        }
+
+        public int receive() throws IOException
+        {
+            return in.readInt();
+        }
+
+        public void sendMove(int move) throws IOException
+        {
+            out.write(move);
+            out.flush();
+        }
+
+        public void sendDecision(boolean playAgain) throws IOException
+        {
+            out.write(playAgain ? BinaryProtocol.NEW_GAME : BinaryProtocol.CLOSE_GAME);
+            out.flush();
+        }
+    }
+}
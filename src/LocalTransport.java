@@ -0,0 +1,148 @@
+/**
+ * Plays a game against a TicTacToe engine in the same process, with no server or socket.  It follows
+ * the same rules as ServerGame, and also sends the final board of each game before its result.
+ *
+ * The engine runs on a background thread of its own, so send() returns straight away and the
+ * computer's search never holds up the caller.
+ */
+
+package TicTacToe;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class LocalTransport implements GameTransport
+{
+    // Queued after the last command once the game is closed.  Compared by identity.
+    private static final String CLOSED = new String("#closed");
+
+    // The commands for each result() of a finished game.
+    private static final String[] RESULTS = {null, "#P", "#C", "#T"};
+
+    private final TicTacToe game = new TicTacToe();
+
+    private final ExecutorService engine = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("TTT engine").daemon().factory());
+
+    // The commands the engine has sent and the caller hasn't received yet.
+    private final BlockingQueue<String> commands = new LinkedBlockingQueue<>();
+
+
+    /**
+     * Starts the first game.
+     */
+    public LocalTransport()
+    {
+        engine.execute(this::newGame);
+    }
+
+    /**
+     * Hands a move or command to the engine.
+     */
+    public void send(String message)
+    {
+        engine.execute(() -> onMessage(message));
+    }
+
+    public String receive() throws IOException
+    {
+        try
+        {
+            String command = commands.take();
+
+            return (command == CLOSED) ? null : command;
+        }
+
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the engine.");
+        }
+    }
+
+    public void close()
+    {
+        engine.shutdownNow();
+        commands.add(CLOSED);
+    }
+
+    /**
+     * Starts a new game, letting the computer move first if it has won the toss.
+     */
+    private void newGame()
+    {
+        game.reset();
+        game.chooseFirstPlayer();
+
+        if(game.getFirstTurn() == game.getCOMPUTER_TURN())
+        {
+            game.setWhoseTurn(game.getCOMPUTER_TURN());
+            game.computerMove();
+        }
+
+        game.setWhoseTurn(game.getPLAYER_TURN());
+        commands.add(board());
+    }
+
+    /**
+     * Acts on a message from the user: a move while the game is on, or whether to play again once it's over.
+     */
+    private void onMessage(String message)
+    {
+        if(game.isOver())
+        {
+            if(message.equals("#NG")) newGame();
+            else if(message.equals("#CG")) close();
+
+            return;
+        }
+
+        int move;
+
+        try
+        {
+            move = Integer.parseInt(message.trim());
+        }
+
+        catch(NumberFormatException e)
+        {
+            move = -1;
+        }
+
+        if(!game.legalMove(move))
+        {
+            commands.add("#E");
+            return;
+        }
+
+        game.placePiece(game.getPLAYER_TURN(), move);
+
+        if(!game.isOver())
+        {
+            game.setWhoseTurn(game.getCOMPUTER_TURN());
+            game.computerMove();
+            game.setWhoseTurn(game.getPLAYER_TURN());
+        }
+
+        commands.add(board());
+
+        if(game.isOver())
+        {
+            commands.add(RESULTS[game.result()]);
+        }
+    }
+
+    /**
+     * Returns the board as a gridStatus, without the line break drawBoard() ends it with.
+     */
+    private String board()
+    {
+        String line = game.drawBoard();
+
+        return line.substring(0, line.length() - 1);
+    }
+}
@@ -0,0 +1,809 @@
+/**
+ * A game of k in a row on a board of any size up to MAX_SIZE by MAX_SIZE, such as 4x4 with 4 in a row
+ * or gomoku-style 7x7 with 5 in a row.
+ *
+ * TicTacToe plays the classic 3x3 board perfectly.  Larger boards have far too many positions to search
+ * to the end, so the computer here searches a bounded number of moves ahead within a time limit, and
+ * judges the positions it stops at by the lines each side could still complete.
+ */
+
+package TicTacToe;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class MNKGame implements BoardGame
+{
+    /**
+     * Various constants used to track the active player, matching TicTacToe's.
+     */
+    private final int NOBODY_TURN   = 0;
+    private final int PLAYER_TURN   = 1;
+    private final int COMPUTER_TURN = -1;
+
+    /**
+     * The most rows or columns a board may have.
+     */
+    public static final int MAX_SIZE = 10;
+
+    // How many moves ahead the computer looks at most, and how long it may take over a move.
+    private static final int SEARCH_DEPTH = 8;
+    private static final Duration SEARCH_TIME = Duration.ofMillis(200);
+
+    // Values of positions for the computer.  A finished game is worth more than any judged position,
+    // and winning sooner (or losing later) is worth a little more than the alternative.
+    private static final int WIN = 1000000000;
+    private static final int TIE = 0;
+
+    // The search looks at the clock once every CLOCK_INTERVAL positions.
+    private static final int CLOCK_INTERVAL = 1024;
+
+    // The directions a line can run in as (row, column) steps: across, down and both diagonals.
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    private final int rows;
+    private final int columns;
+    private final int winLength;
+
+    /**
+     * cells[i] is 0 if grid i is free, 1 if the player has taken it and 2 if the computer has.
+     */
+    private final byte[] cells;
+
+    /**
+     * Every run of winLength grids on the board, used to judge positions the search stops at.
+     */
+    private final int[][] lines;
+
+    /**
+     * weights[n] is how much holding n grids of a line the other side has no part of is worth.
+     */
+    private final int[] weights;
+
+    private int whoseTurn = NOBODY_TURN;
+    private int firstTurn = NOBODY_TURN;
+
+    // The number of pieces on the board, and who (1 or 2, as in cells) has completed a line, if anyone.
+    private int pieces = 0;
+    private int winner = 0;
+
+    /**
+     * Scratch space for the search: orderedMoves[ply] holds the moves being tried ply moves from the root.
+     */
+    private int[][] orderedMoves = new int[0][];
+
+    // When the search in progress has to stop, how many positions it has seen, and whether it ran out of time.
+    private long deadline;
+    private long nodes;
+    private boolean outOfTime;
+
+    // How many moves beyond its own the deepest search the last bestMove() finished looked.
+    private int depthReached;
+
+    // Set to make the search in progress stop as if its time were up (see speculativeMove()).
+    private static final AtomicBoolean NEVER_CANCELLED = new AtomicBoolean();
+    private AtomicBoolean cancelled = NEVER_CANCELLED;
+
+
+    /**
+     * Establishes a new game on an empty board of rows by columns, won by taking winLength grids in a row.
+     */
+    public MNKGame(int rows, int columns, int winLength)
+    {
+        if(!isPlayable(rows, columns, winLength))
+        {
+            throw new IllegalArgumentException("Not a playable board: " + rows + "x" + columns + " with " + winLength + " in a row");
+        }
+
+        this.rows = rows;
+        this.columns = columns;
+        this.winLength = winLength;
+        this.cells = new byte[rows * columns];
+        this.lines = findLines();
+
+        // Each extra grid of a line is worth four times as much, so lines close to winning dominate.
+        this.weights = new int[winLength];
+        for(int n = 1; n < winLength; n++)
+        {
+            weights[n] = 1 << (2 * n);
+        }
+    }
+
+    /**
+     * Establishes a copy of another game, which shares nothing with it that either changes.
+     */
+    private MNKGame(MNKGame other)
+    {
+        this.rows = other.rows;
+        this.columns = other.columns;
+        this.winLength = other.winLength;
+        this.cells = other.cells.clone();
+        this.lines = other.lines;
+        this.weights = other.weights;
+        this.whoseTurn = other.whoseTurn;
+        this.firstTurn = other.firstTurn;
+        this.pieces = other.pieces;
+        this.winner = other.winner;
+    }
+
+    /**
+     * Returns whether a game can be played on rows by columns with winLength in a row.
+     */
+    public static boolean isPlayable(int rows, int columns, int winLength)
+    {
+        return rows >= 1 && rows <= MAX_SIZE && columns >= 1 && columns <= MAX_SIZE &&
+                winLength >= 2 && winLength <= Math.max(rows, columns);
+    }
+
+    /**
+     * Returns the rows, columns and winLength given as three whole numbers in dimensions, or null if they
+     * aren't or no game can be played on them.
+     */
+    static int[] parseDimensions(String[] dimensions)
+    {
+        if(dimensions.length != 3)
+        {
+            return null;
+        }
+
+        try
+        {
+            int rows = Integer.parseInt(dimensions[0]);
+            int columns = Integer.parseInt(dimensions[1]);
+            int winLength = Integer.parseInt(dimensions[2]);
+
+            return isPlayable(rows, columns, winLength) ? new int[] {rows, columns, winLength} : null;
+        }
+
+        catch(NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether this game is played on rows by columns with winLength in a row.
+     */
+    public boolean isPlayedOn(int rows, int columns, int winLength)
+    {
+        return this.rows == rows && this.columns == columns && this.winLength == winLength;
+    }
+
+    /**
+     * Clears the board so the game can be played again, leaving the first player to be chosen.
+     */
+    public void reset()
+    {
+        Arrays.fill(cells, (byte)0);
+        pieces = 0;
+        winner = 0;
+        whoseTurn = NOBODY_TURN;
+        firstTurn = NOBODY_TURN;
+    }
+
+    /**
+     * Returns a copy of this game that can be played on its own.
+     */
+    public MNKGame copy()
+    {
+        return new MNKGame(this);
+    }
+
+    /**
+     * Randomly determines who will go first in this game.
+     */
+    public void chooseFirstPlayer()
+    {
+        if(ThreadLocalRandom.current().nextInt(2) == 0)
+        {
+            setFirstTurn(PLAYER_TURN);
+        }
+
+        else
+        {
+            setFirstTurn(COMPUTER_TURN);
+        }
+    }
+
+    /**
+     * Returns a line describing the board: its rows, columns and win length, then the grids row by row.
+     * For example, "4x4x3:-1--2-----------" is a 4x4 board, 3 in a row, where the player has grid 1
+     * and the computer grid 4.
+     * player:     "1"
+     * computer:   "2"
+     * free space: "-"
+     */
+    public String drawBoard()
+    {
+        StringBuilder toReturn = new StringBuilder(cells.length + 16);
+        toReturn.append(rows).append('x').append(columns).append('x').append(winLength).append(':');
+
+        for(byte cell : cells)
+        {
+            toReturn.append((cell == 1) ? '1' : (cell == 2) ? '2' : '-');
+        }
+
+        return toReturn.append('\n').toString();
+    }
+
+    /**
+     * Puts the line drawBoard() returns into buffer.
+     */
+    public void drawBoard(ByteBuffer buffer)
+    {
+        putNumber(buffer, rows);
+        buffer.put((byte)'x');
+        putNumber(buffer, columns);
+        buffer.put((byte)'x');
+        putNumber(buffer, winLength);
+        buffer.put((byte)':');
+
+        for(byte cell : cells)
+        {
+            buffer.put((cell == 1) ? (byte)'1' : (cell == 2) ? (byte)'2' : (byte)'-');
+        }
+
+        buffer.put((byte)'\n');
+    }
+
+    // Puts the digits of a number no bigger than MAX_SIZE into buffer.
+    private static void putNumber(ByteBuffer buffer, int number)
+    {
+        if(number >= 10)
+        {
+            buffer.put((byte)('0' + number / 10));
+        }
+
+        buffer.put((byte)('0' + number % 10));
+    }
+
+    /**
+     * Returns a boolean value regarding whether or not a proposed move is legal.
+     */
+    public boolean legalMove(int move)
+    {
+        return move >= 0 && move < cells.length && cells[move] == 0;
+    }
+
+    /**
+     * The method through which the computer generates its move.  This method will also make the move
+     * for the computer.
+     */
+    public void computerMove()
+    {
+        placePiece(COMPUTER_TURN, bestMove());
+    }
+
+    /**
+     * Makes the best move the computer can find within budget.
+     */
+    public void computerMove(Duration budget)
+    {
+        placePiece(COMPUTER_TURN, bestMove(SEARCH_DEPTH, budget));
+    }
+
+    /**
+     * Returns the best move the computer can find within SEARCH_DEPTH moves and SEARCH_TIME.
+     */
+    public int bestMove()
+    {
+        return bestMove(SEARCH_DEPTH, SEARCH_TIME);
+    }
+
+    /**
+     * Returns the best move the computer can find within SEARCH_DEPTH moves and budget.
+     */
+    public int bestMove(Duration budget)
+    {
+        return bestMove(SEARCH_DEPTH, budget);
+    }
+
+    /**
+     * Returns the best move the computer can find looking at most maxDepth moves ahead, in about timeLimit.
+     *
+     * The search deepens one move at a time and keeps the choice of the deepest search it finished, so
+     * it always has a move to give when time runs out.  It stops early once the outcome is certain.
+     */
+    public int bestMove(int maxDepth, Duration timeLimit)
+    {
+        // The event is only filled in and committed here, so it costs nothing while recording is off.
+        GameEvents.Search event = new GameEvents.Search();
+        event.begin();
+
+        long start = System.nanoTime();
+        int move = search(maxDepth, timeLimit);
+
+        Metrics.get().recordSearch(nodes, System.nanoTime() - start);
+
+        if(event.shouldCommit())
+        {
+            event.source = "search";
+            event.depth = depthReached;
+            event.nodes = nodes;
+            event.move = move;
+            event.commit();
+        }
+
+        return move;
+    }
+
+    /**
+     * Returns the move bestMove(budget) would make, or -1 if cancelled is set before it is found.
+     * Cancelling is noticed as often as the clock is, so the search stops within CLOCK_INTERVAL positions.
+     */
+    public int speculativeMove(Duration budget, AtomicBoolean cancelled)
+    {
+        GameEvents.Search event = new GameEvents.Search();
+        event.begin();
+
+        this.cancelled = cancelled;
+        int move;
+
+        try
+        {
+            move = search(SEARCH_DEPTH, budget);
+        }
+
+        finally
+        {
+            this.cancelled = NEVER_CANCELLED;
+        }
+
+        if(cancelled.get())
+        {
+            return -1;
+        }
+
+        if(event.shouldCommit())
+        {
+            event.source = "search";
+            event.depth = depthReached;
+            event.nodes = nodes;
+            event.move = move;
+            event.speculative = true;
+            event.commit();
+        }
+
+        return move;
+    }
+
+    /**
+     * Does the search described by bestMove(maxDepth, timeLimit), noting the depth it finished in depthReached.
+     */
+    private int search(int maxDepth, Duration timeLimit)
+    {
+        deadline = System.nanoTime() + timeLimit.toNanos();
+        nodes = 0;
+        outOfTime = false;
+        depthReached = 0;
+
+        if(orderedMoves.length < maxDepth + 1)
+        {
+            orderedMoves = new int[maxDepth + 1][cells.length];
+        }
+
+        // A win, a forced block or an opening needs no search.  Otherwise, until a search finishes, take
+        // the most promising move.
+        if(orderMoves(COMPUTER_TURN, orderedMoves[0], -1) == 1)
+        {
+            return orderedMoves[0][0];
+        }
+
+        int best = orderedMoves[0][0];
+
+        for(int depth = 1; depth <= Math.min(maxDepth, cells.length - pieces); depth++)
+        {
+            int[] moves = orderedMoves[0];
+            int numMoves = orderMoves(COMPUTER_TURN, moves, best);
+
+            int bestValue = -WIN - 1, bestAtDepth = -1;
+
+            for(int i = 0; i < numMoves; i++)
+            {
+                placePiece(COMPUTER_TURN, moves[i]);
+                int value = alphaBeta(depth - 1, 1, PLAYER_TURN, bestValue, WIN);
+                undoMove(moves[i]);
+
+                if(outOfTime)
+                {
+                    return best;
+                }
+
+                if(value > bestValue)
+                {
+                    bestValue = value;
+                    bestAtDepth = moves[i];
+                }
+            }
+
+            best = bestAtDepth;
+            depthReached = depth - 1;
+
+            // A win or loss within reach won't change by looking further.
+            if(Math.abs(bestValue) >= WIN - maxDepth)
+            {
+                break;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Searches depth moves ahead with alpha-beta pruning, with player ({player}_TURN) making the next move
+     * ply moves from the root.  The computer maximizes and the player minimizes the value.
+     */
+    private int alphaBeta(int depth, int ply, int player, int alpha, int beta)
+    {
+        if(winner != 0)
+        {
+            return (winner == 2) ? WIN - ply : -(WIN - ply);
+        }
+
+        if(pieces == cells.length)
+        {
+            return TIE;
+        }
+
+        if(depth == 0)
+        {
+            return evaluate();
+        }
+
+        if((++nodes & (CLOCK_INTERVAL - 1)) == 0 && (System.nanoTime() > deadline || cancelled.get()))
+        {
+            outOfTime = true;
+        }
+
+        // Once time is up, the values don't matter; the search is unwound and thrown away.
+        if(outOfTime)
+        {
+            return TIE;
+        }
+
+        int[] moves = orderedMoves[ply];
+        int numMoves = orderMoves(player, moves, -1);
+        int nextPlayer = (player == PLAYER_TURN) ? COMPUTER_TURN : PLAYER_TURN;
+
+        int bestValue = (player == COMPUTER_TURN) ? -WIN - 1 : WIN + 1;
+
+        for(int i = 0; i < numMoves; i++)
+        {
+            placePiece(player, moves[i]);
+            int value = alphaBeta(depth - 1, ply + 1, nextPlayer, alpha, beta);
+            undoMove(moves[i]);
+
+            if(player == COMPUTER_TURN)
+            {
+                bestValue = Math.max(bestValue, value);
+                alpha = Math.max(alpha, value);
+            }
+
+            else
+            {
+                bestValue = Math.min(bestValue, value);
+                beta = Math.min(beta, value);
+            }
+
+            if(alpha >= beta)
+            {
+                break;
+            }
+        }
+
+        return bestValue;
+    }
+
+    /**
+     * Fills moves with the moves worth trying for player ({player}_TURN) and returns how many there are.
+     *
+     * A move that wins is the only one tried.  Failing that, if the opponent could win next move, only
+     * the moves that stop them are tried.  Otherwise every free grid next to a piece is tried, first
+     * being put first if it is among them.  An empty board is opened in the center.
+     */
+    private int orderMoves(int player, int[] moves, int first)
+    {
+        byte own = (byte)((player == PLAYER_TURN) ? 1 : 2);
+        byte other = (byte)(3 - own);
+
+        int numMoves = 0, numBlocks = 0;
+
+        if(pieces == 0)
+        {
+            moves[0] = (rows / 2) * columns + columns / 2;
+            return 1;
+        }
+
+        for(int move = 0; move < cells.length; move++)
+        {
+            if(cells[move] != 0 || !hasNeighbor(move))
+            {
+                continue;
+            }
+
+            if(completesLine(move, own))
+            {
+                moves[0] = move;
+                return 1;
+            }
+
+            // Blocks gather at the front; the other moves behind them.
+            if(completesLine(move, other))
+            {
+                moves[numMoves] = moves[numBlocks];
+                moves[numBlocks++] = move;
+            }
+
+            else
+            {
+                moves[numMoves] = move;
+            }
+
+            numMoves++;
+        }
+
+        if(numBlocks > 0)
+        {
+            return numBlocks;
+        }
+
+        for(int i = 1; i < numMoves; i++)
+        {
+            if(moves[i] == first)
+            {
+                moves[i] = moves[0];
+                moves[0] = first;
+                break;
+            }
+        }
+
+        return numMoves;
+    }
+
+    /**
+     * Fills moves with the moves the search would try for player ({player}_TURN).
+     */
+    public int likelyMoves(int player, int[] moves)
+    {
+        return orderMoves(player, moves, -1);
+    }
+
+    /**
+     * Returns whether any grid around a grid is taken.
+     */
+    private boolean hasNeighbor(int move)
+    {
+        int row = move / columns, column = move % columns;
+
+        for(int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++)
+        {
+            for(int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++)
+            {
+                if(cells[r * columns + c] != 0)
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns whether taking the free grid move would complete a line for side (1 or 2, as in cells).
+     */
+    private boolean completesLine(int move, byte side)
+    {
+        cells[move] = side;
+        boolean toReturn = longestLine(move) >= winLength;
+        cells[move] = 0;
+
+        return toReturn;
+    }
+
+    /**
+     * Returns the length of the longest line through move held by whoever holds move.  Only the lines
+     * through move are looked at, so checking for a win doesn't mean scanning the board.
+     */
+    private int longestLine(int move)
+    {
+        int row = move / columns, column = move % columns;
+        int toReturn = 0;
+
+        for(int[] direction : DIRECTIONS)
+        {
+            int length = 1 + runLength(row, column, direction[0], direction[1], cells[move])
+                           + runLength(row, column, -direction[0], -direction[1], cells[move]);
+
+            toReturn = Math.max(toReturn, length);
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * Returns how many grids held by side follow (row, column) in steps of (rowStep, columnStep).
+     */
+    private int runLength(int row, int column, int rowStep, int columnStep, byte side)
+    {
+        int toReturn = 0;
+
+        for(int r = row + rowStep, c = column + columnStep;
+            r >= 0 && r < rows && c >= 0 && c < columns && cells[r * columns + c] == side;
+            r += rowStep, c += columnStep)
+        {
+            toReturn++;
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * Returns how good an unfinished position looks for the computer: the weight of every line the
+     * computer could still complete, less the weight of every line the player could.
+     */
+    private int evaluate()
+    {
+        int toReturn = 0;
+
+        for(int[] line : lines)
+        {
+            int player = 0, computer = 0;
+
+            for(int cell : line)
+            {
+                if(cells[cell] == 1) player++;
+                else if(cells[cell] == 2) computer++;
+            }
+
+            if(player == 0)
+            {
+                toReturn += weights[computer];
+            }
+
+            else if(computer == 0)
+            {
+                toReturn -= weights[player];
+            }
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * Returns every run of winLength grids on the board.
+     */
+    private int[][] findLines()
+    {
+        int[][] found = new int[4 * cells.length][];
+        int numLines = 0;
+
+        for(int row = 0; row < rows; row++)
+        {
+            for(int column = 0; column < columns; column++)
+            {
+                for(int[] direction : DIRECTIONS)
+                {
+                    int endRow = row + direction[0] * (winLength - 1);
+                    int endColumn = column + direction[1] * (winLength - 1);
+
+                    if(endRow < 0 || endRow >= rows || endColumn < 0 || endColumn >= columns)
+                    {
+                        continue;
+                    }
+
+                    int[] line = new int[winLength];
+                    for(int i = 0; i < winLength; i++)
+                    {
+                        line[i] = (row + direction[0] * i) * columns + column + direction[1] * i;
+                    }
+
+                    found[numLines++] = line;
+                }
+            }
+        }
+
+        return Arrays.copyOf(found, numLines);
+    }
+
+    /**
+     * Updates the game so player ({player}_TURN) makes a move at the specified
+     * point in the grid.  Only the lines through the move are checked for a win.
+     */
+    public void placePiece(int player, int move)
+    {
+        cells[move] = (byte)((player == PLAYER_TURN) ? 1 : 2);
+        pieces++;
+
+        if(winner == 0 && longestLine(move) >= winLength)
+        {
+            winner = cells[move];
+        }
+    }
+
+    /**
+     * Takes back the piece at the specified point in the grid, leaving it free.
+     *
+     * No move is made once a line is complete, so the move taken back is the only one that can have won.
+     */
+    public void undoMove(int move)
+    {
+        cells[move] = 0;
+        pieces--;
+        winner = 0;
+    }
+
+    /**
+     * Returns an integer value based on examining the state of the game:
+     * 0 - game is on-going
+     * 1 - player has won
+     * 2 - computer has won
+     * 3 - game is a tie
+     */
+    public int result()
+    {
+        if(winner != 0)
+        {
+            return winner;
+        }
+
+        return (pieces == cells.length) ? 3 : 0;
+    }
+
+    /**
+     * Returns true if the game is over or false if it is not.
+     */
+    public boolean isOver()
+    {
+        return result() != 0;
+    }
+
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    public int getWinLength()
+    {
+        return winLength;
+    }
+
+    public int getWhoseTurn()
+    {
+        return whoseTurn;
+    }
+
+    public void setWhoseTurn(int whoseTurn)
+    {
+        this.whoseTurn = whoseTurn;
+    }
+
+    public int getFirstTurn()
+    {
+        return firstTurn;
+    }
+
+    public void setFirstTurn(int firstTurn)
+    {
+        this.firstTurn = firstTurn;
+    }
+
+    public int getPLAYER_TURN()
+    {
+        return PLAYER_TURN;
+    }
+
+    public int getCOMPUTER_TURN()
+    {
+        return COMPUTER_TURN;
+    }
+}
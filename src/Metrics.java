@@ -0,0 +1,426 @@
+/**
+ * Counters for the server's searches, sessions, games and traffic, shared by every game.
+ *
+ * Recording only adds to LongAdders and the lock-free LatencyHistogram, so it allocates nothing and
+ * games on different threads don't contend.  publish() makes the metrics available as an MBean and
+ * in the Prometheus text format over HTTP.
+ */
+
+package TicTacToe;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class Metrics implements MetricsMBean
+{
+    /**
+     * The name the metrics are registered under with the platform MBean server.
+     */
+    public static final String OBJECT_NAME = "TicTacToe:type=Metrics";
+
+    private static final Metrics metrics = new Metrics();
+
+    private final LongAdder activeSessions = new LongAdder();
+    private final LongAdder sessionsOpened = new LongAdder();
+    private final LongAdder gamesStarted = new LongAdder();
+
+    // Games won by the player, won by the computer and tied, indexed as TicTacToe.result().
+    private final LongAdder[] gamesFinished = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+
+    // Games given up part way through for a game on another board.
+    private final LongAdder gamesAbandoned = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder invalidMoves = new LongAdder();
+    private final LongAdder invalidRequests = new LongAdder();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodesSearched = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+
+
+    private Metrics()
+    {
+    }
+
+    /**
+     * Returns the metrics shared by every game.
+     */
+    public static Metrics get()
+    {
+        return metrics;
+    }
+
+    /**
+     * Registers the metrics as an MBean and serves them at http://localhost:port/metrics.
+     * Returns the HTTP server so it can be stopped.
+     */
+    public HttpServer publish(int port) throws IOException
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        }
+
+        catch(JMException e)
+        {
+            throw new IOException("The metrics could not be registered: " + e, e);
+        }
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+        server.createContext("/metrics", exchange ->
+        {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try(OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+
+        server.start();
+
+        return server;
+    }
+
+    /**
+     * Records a search for the computer's move that visited nodes positions and took nanos.
+     */
+    public void recordSearch(long nodes, long nanos)
+    {
+        searches.increment();
+        nodesSearched.add(nodes);
+        searchNanos.add(nanos);
+        searchLatency.record(nanos);
+    }
+
+    public void sessionOpened()
+    {
+        sessionsOpened.increment();
+        activeSessions.increment();
+    }
+
+    public void sessionClosed()
+    {
+        activeSessions.decrement();
+    }
+
+    public void gameStarted()
+    {
+        gamesStarted.increment();
+    }
+
+    /**
+     * Records the end of a game with the given result (as TicTacToe.result() returns it).
+     */
+    public void gameFinished(int result)
+    {
+        gamesFinished[result].increment();
+    }
+
+    /**
+     * Records a game that was left unfinished because the user started another.
+     */
+    public void gameAbandoned()
+    {
+        gamesAbandoned.increment();
+    }
+
+    public void bytesIn(long bytes)
+    {
+        bytesIn.add(bytes);
+    }
+
+    public void bytesOut(long bytes)
+    {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Records a move from the user that was illegal or couldn't be read, so they were asked again.
+     */
+    public void invalidMove()
+    {
+        invalidMoves.increment();
+    }
+
+    /**
+     * Records a stateless or batch request that wasn't a board which can arise in a game (see MoveService
+     * and BatchMoveService).
+     */
+    public void invalidRequest()
+    {
+        invalidRequests.increment();
+    }
+
+    /**
+     * Returns an input stream that counts the bytes read through it as bytes in.
+     */
+    public InputStream countIn(InputStream in)
+    {
+        return new FilterInputStream(in)
+        {
+            public int read() throws IOException
+            {
+                int next = super.read();
+                if(next >= 0) bytesIn.increment();
+                return next;
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                int read = super.read(b, off, len);
+                if(read > 0) bytesIn.add(read);
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Returns an output stream that counts the bytes written through it as bytes out.
+     */
+    public OutputStream countOut(OutputStream out)
+    {
+        return new FilterOutputStream(out)
+        {
+            public void write(int b) throws IOException
+            {
+                out.write(b);
+                bytesOut.increment();
+            }
+
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                out.write(b, off, len);
+                bytesOut.add(len);
+            }
+        };
+    }
+
+    /**
+     * Returns the metrics in the Prometheus text exposition format.
+     */
+    String prometheus()
+    {
+        StringBuilder text = new StringBuilder(2048);
+
+        gauge(text, "tictactoe_active_sessions", "Users connected now.", getActiveSessions());
+        counter(text, "tictactoe_sessions_total", "Users that have connected.", getSessionsOpened());
+        counter(text, "tictactoe_games_started_total", "Games started.", getGamesStarted());
+
+        text.append("# HELP tictactoe_games_finished_total Games finished, by result.\n");
+        text.append("# TYPE tictactoe_games_finished_total counter\n");
+        text.append("tictactoe_games_finished_total{result=\"player\"} ").append(getPlayerWins()).append('\n');
+        text.append("tictactoe_games_finished_total{result=\"computer\"} ").append(getComputerWins()).append('\n');
+        text.append("tictactoe_games_finished_total{result=\"tie\"} ").append(getTies()).append('\n');
+        text.append("tictactoe_games_finished_total{result=\"abandoned\"} ").append(getAbandonedGames()).append('\n');
+
+        counter(text, "tictactoe_received_bytes_total", "Bytes received from users.", getBytesIn());
+        counter(text, "tictactoe_sent_bytes_total", "Bytes sent to users.", getBytesOut());
+        counter(text, "tictactoe_invalid_moves_total", "Moves users were asked for again.", getInvalidMoves());
+        counter(text, "tictactoe_invalid_requests_total", "Stateless or batch requests answered with #E.", getInvalidRequests());
+
+        counter(text, "tictactoe_search_nodes_total", "Positions visited by the computer's searches.", getNodesSearched());
+
+        text.append("# HELP tictactoe_search_seconds Time taken by the computer's searches.\n");
+        text.append("# TYPE tictactoe_search_seconds summary\n");
+        quantile(text, "0.5", searchLatency.getValueAtPercentile(50));
+        quantile(text, "0.99", searchLatency.getValueAtPercentile(99));
+        quantile(text, "0.999", searchLatency.getValueAtPercentile(99.9));
+        text.append("tictactoe_search_seconds_sum ").append(searchNanos.sum() / 1e9).append('\n');
+        text.append("tictactoe_search_seconds_count ").append(getSearches()).append('\n');
+
+        MoveCache cache = TicTacToe.getMoveCache();
+        counter(text, "tictactoe_move_cache_hits_total", "Computer moves found in the move cache.", cache.getHits());
+        counter(text, "tictactoe_move_cache_misses_total", "Computer moves not found in the move cache.", cache.getMisses());
+        counter(text, "tictactoe_move_cache_evictions_total", "Entries pushed out of the move cache.", cache.getEvictions());
+        gauge(text, "tictactoe_move_cache_size", "Positions in the move cache.", cache.getSize());
+        gauge(text, "tictactoe_move_cache_hit_ratio", "Share of move cache lookups that found their position.", cache.getHitRate());
+
+        TranspositionTable table = TicTacToe.getTranspositionTable();
+        counter(text, "tictactoe_search_table_hits_total", "Search table probes that found their position.", table.getHits());
+        counter(text, "tictactoe_search_table_misses_total", "Search table probes that did not.", table.getMisses());
+        gauge(text, "tictactoe_search_table_hit_ratio", "Share of search table probes that found their position.", table.getHitRate());
+
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value)
+    {
+        metric(text, name, help, "counter", value);
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, long value)
+    {
+        metric(text, name, help, "gauge", value);
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, double value)
+    {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" gauge\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void metric(StringBuilder text, String name, String help, String type, long value)
+    {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void quantile(StringBuilder text, String quantile, long nanos)
+    {
+        text.append("tictactoe_search_seconds{quantile=\"").append(quantile).append("\"} ").append(nanos / 1e9).append('\n');
+    }
+
+    public long getActiveSessions()
+    {
+        return activeSessions.sum();
+    }
+
+    public long getSessionsOpened()
+    {
+        return sessionsOpened.sum();
+    }
+
+    public long getGamesStarted()
+    {
+        return gamesStarted.sum();
+    }
+
+    public long getPlayerWins()
+    {
+        return gamesFinished[1].sum();
+    }
+
+    public long getComputerWins()
+    {
+        return gamesFinished[2].sum();
+    }
+
+    public long getTies()
+    {
+        return gamesFinished[3].sum();
+    }
+
+    public long getAbandonedGames()
+    {
+        return gamesAbandoned.sum();
+    }
+
+    public long getBytesIn()
+    {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut()
+    {
+        return bytesOut.sum();
+    }
+
+    public long getInvalidMoves()
+    {
+        return invalidMoves.sum();
+    }
+
+    public long getInvalidRequests()
+    {
+        return invalidRequests.sum();
+    }
+
+    public long getSearches()
+    {
+        return searches.sum();
+    }
+
+    public long getNodesSearched()
+    {
+        return nodesSearched.sum();
+    }
+
+    public double getNodesPerSearch()
+    {
+        long count = getSearches();
+
+        return (count == 0) ? 0 : (double)getNodesSearched() / count;
+    }
+
+    public double getSearchLatencyP50Micros()
+    {
+        return searchLatency.getValueAtPercentile(50) / 1000.0;
+    }
+
+    public double getSearchLatencyP99Micros()
+    {
+        return searchLatency.getValueAtPercentile(99) / 1000.0;
+    }
+
+    public double getSearchLatencyP999Micros()
+    {
+        return searchLatency.getValueAtPercentile(99.9) / 1000.0;
+    }
+
+    public double getSearchLatencyMaxMicros()
+    {
+        return searchLatency.getMaxValue() / 1000.0;
+    }
+
+    public double getMoveCacheHitRate()
+    {
+        return TicTacToe.getMoveCache().getHitRate();
+    }
+
+    public long getMoveCacheSize()
+    {
+        return TicTacToe.getMoveCache().getSize();
+    }
+
+    public long getMoveCacheHits()
+    {
+        return TicTacToe.getMoveCache().getHits();
+    }
+
+    public long getMoveCacheMisses()
+    {
+        return TicTacToe.getMoveCache().getMisses();
+    }
+
+    public long getMoveCacheEvictions()
+    {
+        return TicTacToe.getMoveCache().getEvictions();
+    }
+
+    public double getSearchTableHitRate()
+    {
+        return TicTacToe.getTranspositionTable().getHitRate();
+    }
+
+    public long getSearchTableHits()
+    {
+        return TicTacToe.getTranspositionTable().getHits();
+    }
+
+    public long getSearchTableMisses()
+    {
+        return TicTacToe.getTranspositionTable().getMisses();
+    }
+}
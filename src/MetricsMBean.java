@@ -0,0 +1,60 @@
+/**
+ * The server's metrics as JMX sees them (see Metrics).
+ */
+
+package TicTacToe;
+
+public interface MetricsMBean
+{
+    long getActiveSessions();
+
+    long getSessionsOpened();
+
+    long getGamesStarted();
+
+    long getPlayerWins();
+
+    long getComputerWins();
+
+    long getTies();
+
+    long getAbandonedGames();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getInvalidMoves();
+
+    long getInvalidRequests();
+
+    long getSearches();
+
+    long getNodesSearched();
+
+    double getNodesPerSearch();
+
+    double getSearchLatencyP50Micros();
+
+    double getSearchLatencyP99Micros();
+
+    double getSearchLatencyP999Micros();
+
+    double getSearchLatencyMaxMicros();
+
+    double getMoveCacheHitRate();
+
+    long getMoveCacheSize();
+
+    long getMoveCacheHits();
+
+    long getMoveCacheMisses();
+
+    long getMoveCacheEvictions();
+
+    double getSearchTableHitRate();
+
+    long getSearchTableHits();
+
+    long getSearchTableMisses();
+}
@@ -0,0 +1,190 @@
+/**
+ * A fixed-size cache of the computer's best moves, shared by every game on the server.
+ *
+ * Thousands of games pass through the same few hundred positions, so once any game has searched a
+ * position, the rest look its move up.  Positions are keyed on their canonical form (see
+ * TranspositionTable), so rotations and reflections of a position share one entry.
+ */
+
+package TicTacToe;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MoveCache
+{
+    /**
+     * Layout of an entry.  Each entry is packed into a single int, so games on different threads can
+     * share the cache without locking: a racing write can only replace another whole entry.
+     *
+     * bits  0-17: canonical board (player mask, then computer mask)
+     * bits 18-26: every best move on the canonical board
+     * bit     27: set when the entry is used, cleared when it is passed over for eviction
+     * bit     28: set if the slot holds an entry
+     */
+    private static final int BOARD_MASK = 0x3FFFF;
+    private static final int MOVES_SHIFT = 18;
+    private static final int REFERENCED = 1 << 27;
+    private static final int OCCUPIED = 1 << 28;
+
+    /**
+     * Buckets of two slots each.  A new entry takes a free slot if there is one, and otherwise evicts
+     * an entry that hasn't been used since it was last passed over (the CLOCK policy).
+     */
+    private final int[] entries;
+    private final int bucketMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicInteger size = new AtomicInteger();
+
+
+    /**
+     * Creates a cache with the given number of buckets, which must be a power of two.
+     */
+    public MoveCache(int buckets)
+    {
+        if(Integer.bitCount(buckets) != 1)
+        {
+            throw new IllegalArgumentException("The number of buckets must be a power of two: " + buckets);
+        }
+
+        entries = new int[buckets * 2];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Returns the computer's best move on the board, or -1 if it isn't cached.  When several moves are
+     * equally good, the lowest grid is returned, as by TicTacToe.bestMove().
+     */
+    int get(int playerBoard, int computerBoard)
+    {
+        int symmetry = TranspositionTable.canonicalSymmetry(playerBoard, computerBoard);
+        int board = TranspositionTable.transform(symmetry, playerBoard) | (TranspositionTable.transform(symmetry, computerBoard) << 9);
+        int slot = slot(board);
+
+        for(int i = slot; i < slot + 2; i++)
+        {
+            int entry = entries[i];
+
+            if((entry & OCCUPIED) != 0 && (entry & BOARD_MASK) == board)
+            {
+                if((entry & REFERENCED) == 0)
+                {
+                    entries[i] = entry | REFERENCED;
+                }
+
+                hits.increment();
+
+                int moves = TranspositionTable.untransform(symmetry, (entry >>> MOVES_SHIFT) & 0x1FF);
+                return Integer.numberOfTrailingZeros(moves);
+            }
+        }
+
+        misses.increment();
+        return -1;
+    }
+
+    /**
+     * Caches the computer's best moves on the board, given as a mask of every move that is as good as
+     * any other.
+     */
+    void put(int playerBoard, int computerBoard, int bestMoves)
+    {
+        int symmetry = TranspositionTable.canonicalSymmetry(playerBoard, computerBoard);
+        int board = TranspositionTable.transform(symmetry, playerBoard) | (TranspositionTable.transform(symmetry, computerBoard) << 9);
+        int entry = OCCUPIED | (TranspositionTable.transform(symmetry, bestMoves) << MOVES_SHIFT) | board;
+        int slot = slot(board);
+
+        // Replace this board's entry if it is already here, or fill a free slot.
+        for(int i = slot; i < slot + 2; i++)
+        {
+            int old = entries[i];
+
+            if((old & OCCUPIED) == 0 || (old & BOARD_MASK) == board)
+            {
+                entries[i] = entry;
+
+                if((old & OCCUPIED) == 0)
+                {
+                    size.incrementAndGet();
+                }
+
+                return;
+            }
+        }
+
+        // Give entries used since they were last passed over a second chance.
+        int victim = slot;
+        if((entries[slot] & REFERENCED) != 0)
+        {
+            entries[slot] &= ~REFERENCED;
+            victim = ((entries[slot + 1] & REFERENCED) != 0) ? slot : slot + 1;
+            entries[slot + 1] &= ~REFERENCED;
+        }
+
+        entries[victim] = entry;
+        evictions.increment();
+    }
+
+    /**
+     * Empties the cache.  The counters are left as they are.
+     */
+    public void clear()
+    {
+        Arrays.fill(entries, 0);
+        size.set(0);
+    }
+
+    /**
+     * Returns the number of lookups that found their position.
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find their position.
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that found their position.
+     */
+    public double getHitRate()
+    {
+        long found = getHits(), total = found + getMisses();
+
+        return (total == 0) ? 0 : (double)found / total;
+    }
+
+    /**
+     * Returns the number of entries pushed out to make room for others.
+     */
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of positions cached.  Games racing to fill the same slot can make it drift a little.
+     */
+    public int getSize()
+    {
+        return size.get();
+    }
+
+    private int slot(int board)
+    {
+        // Spread the board before masking; canonical boards cluster in the low bits.
+        int hash = board * 0x9E3779B1;
+
+        return ((hash ^ (hash >>> 16)) & bucketMask) * 2;
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Answers stateless move requests, so that any server can answer any turn of any game.  A Server
+ * started with the "stateless" argument serves every connection this way (see RoundRobinProxy).
+ *
+ * Nothing is kept between requests.  Each request is one line holding a board in the form
+ * drawBoard() sends it, and whose turn it is:
+ *
+ * "#MV <board> <turn>" -- turn is 1 if it is the player's move, 2 if it is the computer's
+ *  => answered with "<move> <result>": the computer's move (-1 if it didn't make one, because
+ *     it wasn't its turn or the game was already over) and result() after it, as 0-3
+ * "#E" -- the request couldn't be understood, or the board can't arise in a game with that side to move
+ *
+ * For example, "#MV 1-------- 2" might be answered with "4 0".  Every line is answered, even a blank one,
+ * so requests may be sent without waiting for the answers, which come back in order.
+ */
+
+package TicTacToe;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class MoveService
+{
+    private final BufferedReader input;
+    private final DataOutputStream output;
+
+
+    /**
+     * Establishes a service answering requests from input on output.  The output should be buffered.
+     */
+    MoveService(BufferedReader input, DataOutputStream output)
+    {
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Answers requests until the user closes the connection.
+     */
+    public void serve() throws IOException
+    {
+        String request;
+
+        while((request = input.readLine()) != null)
+        {
+            output.writeBytes(answer(request));
+
+            // Answers to requests that have already arrived go out together.
+            if(!input.ready())
+            {
+                output.flush();
+            }
+        }
+
+        input.close();
+        output.close();
+    }
+
+    /**
+     * Returns the answer to a request, ending with a line break.
+     */
+    static String answer(String request)
+    {
+        String[] parts = request.trim().split("\\s+");
+
+        if(parts.length != 3 || !parts[0].equals("#MV") || !(parts[2].equals("1") || parts[2].equals("2")))
+        {
+            Metrics.get().invalidRequest();
+            return ServerGame.INVALID_MOVE;
+        }
+
+        int turn = Integer.parseInt(parts[2]);
+        BoardGame game = parseBoard(parts[1], turn);
+
+        if(game == null)
+        {
+            Metrics.get().invalidRequest();
+            return ServerGame.INVALID_MOVE;
+        }
+
+        int move = -1;
+
+        if(turn == 2 && !game.isOver())
+        {
+            move = game.bestMove(ServerGame.MOVE_SLA);
+            game.placePiece(game.getCOMPUTER_TURN(), move);
+        }
+
+        return move + " " + game.result() + "\n";
+    }
+
+    /**
+     * Returns the game with the board drawBoard() would draw as board, or null if board isn't one.
+     * Boards that can't arise in a game with turn (1 the player, 2 the computer) to move are refused.
+     */
+    static BoardGame parseBoard(String board, int turn)
+    {
+        String cells = board;
+        BoardGame game;
+
+        int colon = board.indexOf(':');
+
+        if(colon < 0)
+        {
+            game = new TicTacToe();
+        }
+
+        else
+        {
+            int[] dimensions = MNKGame.parseDimensions(board.substring(0, colon).split("x"));
+
+            if(dimensions == null)
+            {
+                return null;
+            }
+
+            game = new MNKGame(dimensions[0], dimensions[1], dimensions[2]);
+            cells = board.substring(colon + 1);
+        }
+
+        if(cells.length() != expectedCells(game))
+        {
+            return null;
+        }
+
+        int playerPieces = 0, computerPieces = 0;
+
+        for(int i = 0; i < cells.length(); i++)
+        {
+            char cell = cells.charAt(i);
+
+            if(cell == '-')
+            {
+                continue;
+            }
+
+            if(cell != '1' && cell != '2')
+            {
+                return null;
+            }
+
+            if(cell == '1')
+            {
+                game.placePiece(game.getPLAYER_TURN(), i);
+                playerPieces++;
+            }
+
+            else
+            {
+                game.placePiece(game.getCOMPUTER_TURN(), i);
+                computerPieces++;
+            }
+        }
+
+        // Either side may have gone first, but they take turns after that, so the side to move can't
+        // be ahead.
+        int toMove = (turn == 1) ? playerPieces : computerPieces;
+        int waiting = (turn == 1) ? computerPieces : playerPieces;
+
+        if(toMove > waiting || waiting > toMove + 1)
+        {
+            return null;
+        }
+
+        // The game stops at the first line, so only one side can have one.
+        if(hasLine(game, cells, '1') && hasLine(game, cells, '2'))
+        {
+            return null;
+        }
+
+        return game;
+    }
+
+    /**
+     * Returns whether side ('1' the player, '2' the computer) has a line among cells, on a board shaped
+     * like game's.
+     */
+    private static boolean hasLine(BoardGame game, String cells, char side)
+    {
+        BoardGame alone = game.copy();
+        alone.reset();
+
+        int player = (side == '1') ? alone.getPLAYER_TURN() : alone.getCOMPUTER_TURN();
+
+        for(int i = 0; i < cells.length(); i++)
+        {
+            if(cells.charAt(i) == side)
+            {
+                alone.placePiece(player, i);
+            }
+        }
+
+        return alone.result() == side - '0';
+    }
+
+    /**
+     * Returns the number of grids on the game's board.
+     */
+    private static int expectedCells(BoardGame game)
+    {
+        if(game instanceof MNKGame board)
+        {
+            return board.getRows() * board.getColumns();
+        }
+
+        return 9;
+    }
+}
@@ -13,7 +13,12 @@ public class PlayTicTacToe
 {
     public static void main(String[] args) throws InterruptedException
     {
-        TicTacToeGUI game = new TicTacToeGUI();
+        // Pass "binary" to talk to the server in the compact binary protocol, or "local" to play
+        // against an engine in this process with no server at all.
+        String mode = (args.length > 0) ? args[0] : "";
+
+        TicTacToeGUI game = mode.equals("local") ? new TicTacToeGUI(new LocalTransport()) :
+                new TicTacToeGUI(mode.equals("binary"));
         game.run();
     }
 }
@@ -0,0 +1,160 @@
+/**
+ * Thinks about the computer's reply to each move the user is likely to make while the user is still
+ * choosing one, so that when they do move, the reply is usually ready.
+ *
+ * Each session has its own Ponderer, but they share a small pool of low-priority threads: at most
+ * half the cores, with no more work waiting than the threads can start next.  Pondering is skipped
+ * whenever that pool is full or the machine already has as much to run as it has cores, so it only
+ * ever uses time that would otherwise be idle.
+ */
+
+package TicTacToe;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class Ponderer
+{
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int THREADS = Math.max(1, CORES / 2);
+
+    private static final ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(THREADS), task ->
+            {
+                Thread thread = new Thread(task, "Ponderer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+
+                return thread;
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    static
+    {
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    private static final OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+
+    // How long each reply may be thought about, as it would be on the computer's turn.
+    private final Duration budget;
+
+    // The pondering under way for this session, or null if there is none.
+    private Speculation speculation;
+
+
+    /**
+     * Creates a Ponderer that gives each reply as long as budget to be chosen.
+     */
+    public Ponderer(Duration budget)
+    {
+        this.budget = budget;
+    }
+
+    /**
+     * Starts thinking about the computer's replies in game, where it is the user's move.  Any earlier
+     * pondering is abandoned.  Nothing is started if the server is busy.
+     */
+    public void start(BoardGame game)
+    {
+        cancel();
+
+        if(saturated())
+        {
+            return;
+        }
+
+        speculation = new Speculation(game.copy(), budget);
+        pool.execute(speculation);
+    }
+
+    /**
+     * Stops pondering and returns the reply it chose to the user's move, or -1 if it didn't get to it.
+     */
+    public int reply(int move)
+    {
+        if(speculation == null || move < 0)
+        {
+            cancel();
+            return -1;
+        }
+
+        // Replies are stored one higher, so that 0 means none was chosen.
+        int reply = speculation.replies.get(move) - 1;
+        cancel();
+
+        return reply;
+    }
+
+    /**
+     * Abandons any pondering under way.  A search that has already begun stops within a few hundred
+     * positions, freeing its thread, and no further one is started.
+     */
+    public void cancel()
+    {
+        if(speculation != null)
+        {
+            speculation.cancelled.set(true);
+            pool.remove(speculation);
+            speculation = null;
+        }
+    }
+
+    /**
+     * Returns whether the machine has no time to spare for pondering.
+     */
+    private static boolean saturated()
+    {
+        double load = system.getSystemLoadAverage();
+
+        return pool.getQueue().remainingCapacity() == 0 || load >= CORES;
+    }
+
+    /**
+     * Chooses the computer's reply to each of the user's likely moves in turn, most likely first.
+     */
+    private static class Speculation implements Runnable
+    {
+        private final BoardGame game;
+        private final Duration budget;
+
+        // replies[move] is one more than the computer's reply to the user's move, or 0 if it isn't known.
+        private final AtomicIntegerArray replies;
+
+        // Set to stop the search in progress as well as the ones after it.
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+
+        Speculation(BoardGame game, Duration budget)
+        {
+            this.game = game;
+            this.budget = budget;
+            this.replies = new AtomicIntegerArray(MNKGame.MAX_SIZE * MNKGame.MAX_SIZE);
+        }
+
+        public void run()
+        {
+            int[] moves = new int[MNKGame.MAX_SIZE * MNKGame.MAX_SIZE];
+            int numMoves = game.likelyMoves(game.getPLAYER_TURN(), moves);
+
+            for(int i = 0; i < numMoves && !cancelled.get(); i++)
+            {
+                game.placePiece(game.getPLAYER_TURN(), moves[i]);
+
+                if(!game.isOver())
+                {
+                    // A cancelled search gives -1, which is stored as not known.
+                    replies.set(moves[i], game.speculativeMove(budget, cancelled) + 1);
+                }
+
+                game.undoMove(moves[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * A small load balancer for trying out stateless servers (see MoveService) on one machine.
+ *
+ * It accepts clients on its own port and sends each of their request lines to the next of its
+ * servers in turn, so consecutive turns of one game are answered by different processes.  A server
+ * that fails is skipped and the request is sent to the next one, so a server can be restarted
+ * without any game noticing.  Each client gets its own connection to every server, opened when first
+ * needed.
+ *
+ * Usage: java TicTacToe.RoundRobinProxy [port=9998] servers=host:port,host:port,...
+ * For example, with servers started as "Server stateless port=10001 metrics=0" and so on:
+ *     java TicTacToe.RoundRobinProxy servers=127.0.0.1:10001,127.0.0.1:10002
+ */
+
+package TicTacToe;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class RoundRobinProxy
+{
+    /**
+     * The port the proxy listens on unless told otherwise.
+     */
+    static int PORT = 9998;
+
+    /**
+     * How long a server may take to answer before it is taken to have failed.  It is well beyond the
+     * computer's time for a move (see ServerGame.MOVE_SLA), so only a stuck or lost server is passed over.
+     */
+    static int SERVER_TIMEOUT_MILLIS = 5000;
+
+    private final ServerSocket welcomeSocket;
+    private final InetSocketAddress[] servers;
+
+    // The index of the server the next request goes to, counting up forever.
+    private final AtomicInteger next = new AtomicInteger();
+
+    // When (System.nanoTime()) each server that last failed may be tried again, for every client.
+    private final AtomicLongArray retryAt;
+
+    // Relays every client on its own virtual thread.
+    private final ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+
+
+    /**
+     * Binds a proxy to port that shares requests between servers.
+     */
+    RoundRobinProxy(int port, InetSocketAddress[] servers) throws IOException
+    {
+        if(servers.length == 0)
+        {
+            throw new IllegalArgumentException("The proxy needs at least one server.");
+        }
+
+        this.welcomeSocket = new ServerSocket(port);
+        this.servers = servers;
+        this.retryAt = new AtomicLongArray(servers.length);
+
+        // nanoTime() can be negative, so "now" rather than 0 is what marks a server as never having failed.
+        long now = System.nanoTime();
+
+        for(int i = 0; i < servers.length; i++)
+        {
+            retryAt.set(i, now);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int port = PORT;
+        InetSocketAddress[] servers = new InetSocketAddress[0];
+
+        for(String arg : args)
+        {
+            if(arg.startsWith("port="))
+            {
+                port = Integer.parseInt(arg.substring(5));
+            }
+
+            else if(arg.startsWith("servers="))
+            {
+                String[] addresses = arg.substring(8).split(",");
+                servers = new InetSocketAddress[addresses.length];
+
+                for(int i = 0; i < addresses.length; i++)
+                {
+                    int colon = addresses[i].lastIndexOf(':');
+                    servers[i] = new InetSocketAddress(addresses[i].substring(0, colon),
+                            Integer.parseInt(addresses[i].substring(colon + 1)));
+                }
+            }
+
+            else
+            {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        try
+        {
+            new RoundRobinProxy(port, servers).run();
+        }
+
+        catch(IOException e)
+        {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * Accepts clients until the proxy's socket is closed.
+     */
+    public void run() throws IOException
+    {
+        System.out.println("The proxy is now running on port " + welcomeSocket.getLocalPort() +
+                " for " + servers.length + " servers...");
+
+        while(true)
+        {
+            Socket client = welcomeSocket.accept();
+            clients.execute(() -> relay(client));
+        }
+    }
+
+    /**
+     * Passes a client's requests to the servers in turn, and their answers back, until the client leaves.
+     */
+    private void relay(Socket client)
+    {
+        Backend[] backends = new Backend[servers.length];
+
+        try(client)
+        {
+            client.setTcpNoDelay(true);
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.ISO_8859_1));
+            Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.ISO_8859_1));
+
+            String request;
+
+            while((request = in.readLine()) != null)
+            {
+                out.write(forward(request, backends));
+                out.write('\n');
+
+                // Answers to requests that have already arrived go out together.
+                if(!in.ready())
+                {
+                    out.flush();
+                }
+            }
+        }
+
+        catch(IOException e)
+        {
+            System.err.println("A client was dropped: " + e);
+        }
+
+        finally
+        {
+            for(Backend backend : backends)
+            {
+                if(backend != null)
+                {
+                    backend.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the answer to a request from the next server that can give one.  A server that fails is
+     * passed over by every client for SERVER_TIMEOUT_MILLIS.
+     */
+    private String forward(String request, Backend[] backends) throws IOException
+    {
+        IOException failure = null;
+
+        for(int attempt = 0; attempt < servers.length; attempt++)
+        {
+            int index = Math.floorMod(next.getAndIncrement(), servers.length);
+
+            // A server that failed lately is left alone for a while, unless it is the last one to try.
+            if(System.nanoTime() - retryAt.get(index) < 0 && attempt < servers.length - 1)
+            {
+                continue;
+            }
+
+            try
+            {
+                if(backends[index] == null)
+                {
+                    backends[index] = new Backend(servers[index]);
+                }
+
+                return backends[index].request(request);
+            }
+
+            // Stateless servers are interchangeable, so one that fails is simply passed over.
+            catch(IOException e)
+            {
+                failure = e;
+                retryAt.set(index, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SERVER_TIMEOUT_MILLIS));
+
+                if(backends[index] != null)
+                {
+                    backends[index].close();
+                    backends[index] = null;
+                }
+            }
+        }
+
+        throw new IOException("No server could answer the request.", failure);
+    }
+
+    /**
+     * One client's connection to one server.
+     */
+    private static class Backend
+    {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+
+        Backend(InetSocketAddress server) throws IOException
+        {
+            socket = new Socket();
+            socket.connect(server, SERVER_TIMEOUT_MILLIS);
+            socket.setSoTimeout(SERVER_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1));
+        }
+
+        /**
+         * Sends a request and returns the server's answer.  Throws SocketTimeoutException if the server
+         * doesn't answer within SERVER_TIMEOUT_MILLIS.
+         */
+        String request(String request) throws IOException
+        {
+            out.write(request);
+            out.write('\n');
+            out.flush();
+
+            String answer = in.readLine();
+            if(answer == null)
+            {
+                throw new IOException("The server closed the connection.");
+            }
+
+            return answer;
+        }
+
+        void close()
+        {
+            try
+            {
+                socket.close();
+            }
+
+            catch(IOException e)
+            {
+                System.err.println(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,999 @@
+/**
+ * A non-blocking alternative to the thread-per-game Server.
+ *
+ * A single thread watches every connection through one Selector.  Each user's session is a small
+ * state machine that only wakes up once a full line has arrived, so an idle user costs little more
+ * than their game's board.  The computer's moves are searched on a pool of worker threads, which hand
+ * each finished turn back to the selector thread, so a long search never holds up the other users.
+ * It speaks the same protocol as ServerGame:
+ *
+ * a 9 character gridStatus -- see TicTacToe.drawBoard()
+ *  => expects the user to return an integer 0-8 representing their move
+ * "#E" -- the move can't be played (or the line was too long to be one)
+ *  => expects another move
+ * "#P", "#C" or "#T" -- the game has ended
+ *  => expects "#NG" to play a new game or "#CG" to close the game, and answers anything else with "#E"
+ *
+ * As with ServerGame, "#NG rows columns winLength" in place of a move or a decision starts over on that
+ * board.  Clients may switch to the binary protocol as described in BinaryProtocol, which only plays 3x3.
+ */
+
+package TicTacToe;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class SelectorServer
+{
+    /**
+     * The longest line a user may send.  Longer lines are discarded.
+     */
+    static int MAX_LINE = 16;
+
+    /**
+     * The size of the buffers holding output a user has not yet accepted, and how many of them are kept for reuse.
+     */
+    static int PENDING_BUFFER_SIZE = 256;
+    static int PENDING_BUFFERS_KEPT = 1024;
+
+    /**
+     * The number of threads searching for the computer's moves.  The searches are CPU bound, so by default
+     * there is one per core.
+     */
+    static int SEARCHERS = Runtime.getRuntime().availableProcessors();
+
+    // The states of a session.
+    private static final int AWAITING_MOVE     = 0;
+    private static final int AWAITING_DECISION = 1;
+    private static final int CLOSING           = 2;
+    private static final int THINKING          = 3;
+
+    private final Selector selector;
+    private final ServerSocketChannel welcomeChannel;
+    private final SelectionKey welcomeKey;
+    private final int maxSessions;
+    private int numSessions = 0;
+
+    // When accepting resumes after an accept has failed, in System.nanoTime() terms, or 0 while it hasn't.
+    private long acceptResumesAt = 0;
+
+    // Whether the last accept failed, so that a failure that persists is only logged once.
+    private boolean acceptFailing = false;
+
+    /**
+     * Buffers shared by every session.  Only the selector thread touches them.
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(4096);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(PENDING_BUFFER_SIZE);
+    private final BufferPool pendingBuffers = new BufferPool(PENDING_BUFFER_SIZE, PENDING_BUFFERS_KEPT);
+
+    // The computer's moves are searched here, and the sessions whose moves have been made are queued for the
+    // selector thread, which is woken to carry on their games.
+    private final ExecutorService searchers = Executors.newFixedThreadPool(SEARCHERS,
+            Thread.ofPlatform().name("TTT nio-search-", 0).daemon().factory());
+    private final Queue<Session> searched = new ConcurrentLinkedQueue<>();
+
+    // Counted down once run() has returned.
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private volatile boolean running = true;
+
+
+    /**
+     * Binds a server to port that plays at most maxSessions games at once.
+     */
+    SelectorServer(int port, int maxSessions) throws IOException
+    {
+        this.maxSessions = maxSessions;
+
+        selector = Selector.open();
+        welcomeChannel = ServerSocketChannel.open();
+        welcomeChannel.bind(new InetSocketAddress(port), 1024);
+        welcomeChannel.configureBlocking(false);
+        welcomeKey = welcomeChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Accepts users and plays their games until shutdown() is called.
+     */
+    public void run()
+    {
+        System.out.println("The server is now running on port " + welcomeChannel.socket().getLocalPort() +
+                " without blocking (at most " + maxSessions + " games at a time)...");
+
+        try
+        {
+            while(running)
+            {
+                if(acceptResumesAt != 0)
+                {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(acceptResumesAt - System.nanoTime())));
+                    resumeAcceptingIfDue();
+                }
+
+                else
+                {
+                    selector.select();
+                }
+
+                Session moved;
+                while((moved = searched.poll()) != null)
+                {
+                    moved.computerMoved();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if(!key.isValid())
+                    {
+                        continue;
+                    }
+
+                    if(key.isAcceptable())
+                    {
+                        accept();
+                        continue;
+                    }
+
+                    Session session = (Session)key.attachment();
+
+                    if(key.isReadable())
+                    {
+                        session.read();
+                    }
+
+                    if(key.isValid() && key.isWritable())
+                    {
+                        session.flush();
+                    }
+                }
+            }
+        }
+
+        catch(IOException e)
+        {
+            System.err.println(e);
+        }
+
+        finally
+        {
+            searchers.shutdownNow();
+
+            for(SelectionKey key : selector.keys())
+            {
+                if(key.attachment() instanceof Session)
+                {
+                    ((Session)key.attachment()).close();
+                }
+            }
+
+            try
+            {
+                welcomeChannel.close();
+                selector.close();
+            }
+
+            catch(IOException e)
+            {
+                System.err.println(e);
+            }
+
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Stops the server, closing every connection, and waits for run() to return.
+     */
+    public void shutdown()
+    {
+        if(!running)
+        {
+            return;
+        }
+
+        running = false;
+        System.out.println("The server is shutting down...");
+        selector.wakeup();
+
+        try
+        {
+            stopped.await(Server.SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+        }
+
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts a waiting user and starts their first game.
+     */
+    private void accept()
+    {
+        SocketChannel channel;
+
+        try
+        {
+            channel = welcomeChannel.accept();
+        }
+
+        // Running out of file descriptors fails every accept until a game ends, so stop accepting for a while
+        // rather than retry at once.  The games in progress carry on.
+        catch(IOException e)
+        {
+            if(!acceptFailing)
+            {
+                System.err.println(e + " (accepting again every " + Server.ACCEPT_BACKOFF_MILLIS + " ms)");
+                acceptFailing = true;
+            }
+
+            welcomeKey.interestOps(0);
+            acceptResumesAt = Math.max(1, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Server.ACCEPT_BACKOFF_MILLIS));
+            return;
+        }
+
+        if(channel == null)
+        {
+            return;
+        }
+
+        if(acceptFailing)
+        {
+            System.err.println("The server is accepting users again.");
+            acceptFailing = false;
+        }
+
+        System.out.println("A user has connected from " + channel.socket().getInetAddress());
+
+        Session session = new Session(channel);
+
+        try
+        {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+        }
+
+        catch(IOException e)
+        {
+            System.err.println(e);
+
+            try
+            {
+                channel.close();
+            }
+
+            catch(IOException closeError)
+            {
+                System.err.println(closeError);
+            }
+
+            return;
+        }
+
+        Metrics.get().sessionOpened();
+
+        // Leave further users in the backlog until a game ends.
+        if(++numSessions >= maxSessions)
+        {
+            welcomeKey.interestOps(0);
+        }
+
+        session.newGame();
+    }
+
+    /**
+     * Starts accepting again once the wait after a failed accept is over, unless the server is full.
+     */
+    private void resumeAcceptingIfDue()
+    {
+        if(System.nanoTime() - acceptResumesAt < 0)
+        {
+            return;
+        }
+
+        acceptResumesAt = 0;
+
+        if(numSessions < maxSessions && welcomeKey.isValid())
+        {
+            welcomeKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    /**
+     * One user's connection and the state of their game.  While the computer is thinking, the game belongs
+     * to a searcher, and nothing more is read from the user until it has been handed back.
+     */
+    private class Session
+    {
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        private BoardGame game;
+        private int state;
+
+        // The board the next game is played on.
+        private int rows = 3;
+        private int columns = 3;
+        private int winLength = 3;
+
+        // Whether the client's first byte has been seen yet, and whether it asked for the binary protocol.
+        private boolean negotiated = false;
+        private boolean binary = false;
+
+        // The line being received, and whether it has grown too long to keep.
+        private final byte[] line = new byte[MAX_LINE];
+        private int lineLength = 0;
+        private boolean discardingLine = false;
+
+        // Output the user has not accepted yet, or null if everything has been written.
+        private ByteBuffer pending;
+
+        // Input read along with a move but not yet acted on because the computer was still to reply, or null.
+        private ByteBuffer held;
+
+
+        Session(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        /**
+         * Establishes a new game on the chosen board and lets the computer move first if it has won the toss.
+         */
+        void newGame()
+        {
+            game = ServerGame.gameOn(game, rows, columns, winLength);
+            game.chooseFirstPlayer();
+            Metrics.get().gameStarted();
+
+            if(game.getFirstTurn() == game.getCOMPUTER_TURN())
+            {
+                think();
+            }
+
+            else
+            {
+                awaitMove();
+            }
+        }
+
+        /**
+         * Hands the game to a searcher for the computer's move, reading nothing more from the user until it
+         * has been made.
+         */
+        private void think()
+        {
+            state = THINKING;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            game.setWhoseTurn(game.getCOMPUTER_TURN());
+
+            searchers.execute(() ->
+            {
+                try
+                {
+                    game.computerMove(ServerGame.MOVE_SLA);
+                }
+
+                finally
+                {
+                    searched.add(this);
+                    selector.wakeup();
+                }
+            });
+        }
+
+        /**
+         * Carries on the game once a searcher has made the computer's move.  Called on the selector thread.
+         */
+        void computerMoved()
+        {
+            // The user may have been cut off, or the server stopped, while the computer thought.
+            if(!key.isValid())
+            {
+                return;
+            }
+
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+
+            if(game.isOver())
+            {
+                finishGame();
+            }
+
+            else
+            {
+                awaitMove();
+            }
+
+            if(held != null)
+            {
+                ByteBuffer input = held;
+                held = null;
+                consume(input);
+                pendingBuffers.release(input);
+            }
+        }
+
+        /**
+         * Sends the board to the user and waits for their move.
+         */
+        private void awaitMove()
+        {
+            game.setWhoseTurn(game.getPLAYER_TURN());
+            state = AWAITING_MOVE;
+            sendBoard();
+        }
+
+        /**
+         * Sends the board in whichever protocol the client speaks.
+         */
+        private void sendBoard()
+        {
+            if(binary)
+            {
+                sendFrame(BinaryProtocol.YOUR_MOVE);
+            }
+
+            else
+            {
+                writeBuffer.clear();
+                game.drawBoard(writeBuffer);
+                writeBuffer.flip();
+
+                enqueue();
+            }
+        }
+
+        /**
+         * Reads whatever the user has sent and acts on every complete line.
+         */
+        void read()
+        {
+            readBuffer.clear();
+
+            try
+            {
+                int read = channel.read(readBuffer);
+
+                if(read < 0)
+                {
+                    System.err.println("The game was terminated by the user.");
+                    close();
+                    return;
+                }
+
+                Metrics.get().bytesIn(read);
+            }
+
+            catch(IOException e)
+            {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+
+            // The first board always goes out as text.  Switch to binary if the client answers it with the handshake.
+            if(!negotiated && readBuffer.hasRemaining())
+            {
+                negotiated = true;
+
+                if((readBuffer.get(readBuffer.position()) & 0xFF) == BinaryProtocol.HANDSHAKE)
+                {
+                    readBuffer.get();
+                    binary = true;
+
+                    writeBuffer.clear();
+                    writeBuffer.put((byte)BinaryProtocol.HANDSHAKE);
+                    writeBuffer.putInt(BinaryProtocol.frame(BinaryProtocol.YOUR_MOVE, packedBoard()));
+                    writeBuffer.flip();
+                    enqueue();
+                }
+            }
+
+            consume(readBuffer);
+        }
+
+        /**
+         * Acts on every complete line in input, until the computer has to think about a reply.  Whatever
+         * follows is held until it has.
+         */
+        private void consume(ByteBuffer input)
+        {
+            while(input.hasRemaining() && key.isValid() && state != THINKING)
+            {
+                byte next = input.get();
+
+                // Every byte from a binary client is a message of its own.
+                if(binary)
+                {
+                    onMessage(next & 0xFF);
+                }
+
+                else if(next == '\n')
+                {
+                    if(!discardingLine)
+                    {
+                        onLine();
+                    }
+
+                    // A line too long to be a move still gets an answer, so the user isn't left waiting.
+                    else if(state == AWAITING_MOVE)
+                    {
+                        onMove(-1);
+                    }
+
+                    lineLength = 0;
+                    discardingLine = false;
+                }
+
+                else if(next != '\r')
+                {
+                    if(lineLength < line.length)
+                    {
+                        line[lineLength++] = next;
+                    }
+
+                    else
+                    {
+                        discardingLine = true;
+                    }
+                }
+            }
+
+            if(input.hasRemaining() && key.isValid())
+            {
+                // A user who sends more than a buffer's worth while the computer thinks is cut off.
+                if(input.remaining() > PENDING_BUFFER_SIZE)
+                {
+                    close();
+                    return;
+                }
+
+                held = pendingBuffers.acquire().put(input).flip();
+            }
+        }
+
+        /**
+         * Acts on a complete line from the user according to the state of the session.
+         */
+        private void onLine()
+        {
+            int start = 0, end = lineLength;
+
+            while(start < end && Character.isWhitespace(line[start])) start++;
+            while(end > start && Character.isWhitespace(line[end - 1])) end--;
+
+            // Blank lines are ignored whatever the session is waiting for.
+            if(start == end)
+            {
+                return;
+            }
+
+            // Start over on the board asked for, if it can be played.
+            if(state == AWAITING_MOVE && lineStartsWith(start, end, "#NG"))
+            {
+                if(chooseBoard(start + 3, end))
+                {
+                    // The game given up on is counted, so every game started is also finished.
+                    Metrics.get().gameAbandoned();
+                    newGame();
+                }
+
+                else
+                {
+                    onMove(-1);
+                }
+            }
+
+            else if(state == AWAITING_MOVE)
+            {
+                onMove(parseMove(start, end));
+            }
+
+            else if(state == AWAITING_DECISION)
+            {
+                if(lineStartsWith(start, end, "#NG") && chooseBoard(start + 3, end))
+                {
+                    onDecision(true);
+                }
+
+                else if(lineEquals(start, end, "#CG"))
+                {
+                    onDecision(false);
+                }
+
+                // A decision that can't be understood is answered, so the user isn't left waiting.
+                else
+                {
+                    send(ServerGame.INVALID_MOVE);
+                }
+            }
+        }
+
+        /**
+         * Acts on a byte from a binary client according to the state of the session.
+         */
+        private void onMessage(int message)
+        {
+            if(state == AWAITING_MOVE)
+            {
+                onMove(message);
+            }
+
+            else if(state == AWAITING_DECISION && message == BinaryProtocol.NEW_GAME)
+            {
+                onDecision(true);
+            }
+
+            else if(state == AWAITING_DECISION && message == BinaryProtocol.CLOSE_GAME)
+            {
+                onDecision(false);
+            }
+        }
+
+        /**
+         * Plays the user's move and the computer's reply.
+         */
+        private void onMove(int userMove)
+        {
+            // Ask the user for their move until they enter a valid one.  They have the board already.
+            if(!game.legalMove(userMove))
+            {
+                Metrics.get().invalidMove();
+
+                if(binary)
+                {
+                    sendFrame(BinaryProtocol.INVALID_MOVE);
+                }
+
+                else
+                {
+                    send(ServerGame.INVALID_MOVE);
+                }
+
+                return;
+            }
+
+            game.placePiece(game.getPLAYER_TURN(), userMove);
+
+            if(game.isOver())
+            {
+                finishGame();
+            }
+
+            else
+            {
+                think();
+            }
+        }
+
+        /**
+         * Starts another game if the user would like one, and closes the connection otherwise.
+         */
+        private void onDecision(boolean playAgain)
+        {
+            if(playAgain)
+            {
+                System.out.println("The user would like to play another game.");
+                newGame();
+                return;
+            }
+
+            System.out.println("The user would NOT like to play another game.");
+            state = CLOSING;
+
+            if(pending == null)
+            {
+                close();
+            }
+        }
+
+        /**
+         * Alerts the user to how the game ended and waits to hear whether they would like another.
+         */
+        private void finishGame()
+        {
+            state = AWAITING_DECISION;
+            Metrics.get().gameFinished(game.result());
+
+            // Binary clients get the final board along with the result.
+            if(binary)
+            {
+                sendFrame(game.result());
+                return;
+            }
+
+            switch(game.result())
+            {
+                // Player has won.
+                case 1:
+                    System.out.println("The player has won the game.");
+                    send("#P\n");
+                    break;
+                // Computer has won.
+                case 2:
+                    System.out.println("The computer has won the game.");
+                    send("#C\n");
+                    break;
+                // Game is a tie.
+                case 3:
+                    System.out.println("The game is a tie.");
+                    send("#T\n");
+                    break;
+            }
+        }
+
+        /**
+         * Returns the move on the line between start and end, or -1 if it isn't a number.
+         */
+        private int parseMove(int start, int end)
+        {
+            int move = 0;
+
+            for(int i = start; i < end; i++)
+            {
+                if(line[i] < '0' || line[i] > '9' || move > 9)
+                {
+                    return -1;
+                }
+
+                move = move * 10 + (line[i] - '0');
+            }
+
+            return move;
+        }
+
+        /**
+         * Chooses the board for the next game from the line between start and end, as ServerGame does with
+         * what follows "#NG".  Returns false, keeping the current board, if it can't be played.
+         */
+        private boolean chooseBoard(int start, int end)
+        {
+            String request = new String(line, start, end - start, StandardCharsets.ISO_8859_1).trim();
+
+            if(request.isEmpty())
+            {
+                return true;
+            }
+
+            int[] dimensions = MNKGame.parseDimensions(request.split("\\s+"));
+
+            if(dimensions == null)
+            {
+                return false;
+            }
+
+            rows = dimensions[0];
+            columns = dimensions[1];
+            winLength = dimensions[2];
+
+            return true;
+        }
+
+        private boolean lineEquals(int start, int end, String command)
+        {
+            return end - start == command.length() && lineStartsWith(start, end, command);
+        }
+
+        private boolean lineStartsWith(int start, int end, String command)
+        {
+            if(end - start < command.length())
+            {
+                return false;
+            }
+
+            for(int i = 0; i < command.length(); i++)
+            {
+                if(line[start + i] != command.charAt(i))
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Sends a text message to the user.
+         */
+        private void send(String message)
+        {
+            writeBuffer.clear();
+            for(int i = 0; i < message.length(); i++)
+            {
+                writeBuffer.put((byte)message.charAt(i));
+            }
+            writeBuffer.flip();
+
+            enqueue();
+        }
+
+        /**
+         * Sends a binary frame holding status and the board.
+         */
+        private void sendFrame(int status)
+        {
+            writeBuffer.clear();
+            writeBuffer.putInt(BinaryProtocol.frame(status, packedBoard()));
+            writeBuffer.flip();
+
+            enqueue();
+        }
+
+        /**
+         * Returns the board of a binary client's game, packed as BinaryProtocol sends it.
+         */
+        private int packedBoard()
+        {
+            return ((TicTacToe)game).getPackedBoard();
+        }
+
+        /**
+         * Writes the contents of writeBuffer to the user.  Whatever the connection can't take right away is
+         * kept in a pooled buffer and written once the user is ready for it.
+         */
+        private void enqueue()
+        {
+            try
+            {
+                if(pending == null)
+                {
+                    Metrics.get().bytesOut(channel.write(writeBuffer));
+
+                    if(!writeBuffer.hasRemaining())
+                    {
+                        return;
+                    }
+
+                    pending = pendingBuffers.acquire();
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+
+                // A user who sends moves without ever reading the replies is cut off.
+                if(pending.remaining() < writeBuffer.remaining())
+                {
+                    close();
+                    return;
+                }
+
+                pending.put(writeBuffer);
+            }
+
+            catch(IOException e)
+            {
+                close();
+            }
+        }
+
+        /**
+         * Writes as much pending output as the user will take.
+         */
+        void flush()
+        {
+            try
+            {
+                pending.flip();
+                Metrics.get().bytesOut(channel.write(pending));
+                pending.compact();
+            }
+
+            catch(IOException e)
+            {
+                close();
+                return;
+            }
+
+            if(pending.position() == 0)
+            {
+                pendingBuffers.release(pending);
+                pending = null;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+                if(state == CLOSING)
+                {
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Closes the connection and lets another user in if the server was full or accepting had failed.
+         */
+        void close()
+        {
+            if(!key.isValid())
+            {
+                return;
+            }
+
+            key.cancel();
+            Metrics.get().sessionClosed();
+
+            try
+            {
+                channel.close();
+            }
+
+            catch(IOException e)
+            {
+                System.err.println(e);
+            }
+
+            if(pending != null)
+            {
+                pendingBuffers.release(pending);
+                pending = null;
+            }
+
+            if(held != null)
+            {
+                pendingBuffers.release(held);
+                held = null;
+            }
+
+            // An accept that failed for want of a file descriptor may succeed now that this one is free.
+            if((numSessions-- >= maxSessions || acceptResumesAt != 0) && welcomeKey.isValid())
+            {
+                acceptResumesAt = 0;
+                welcomeKey.interestOps(SelectionKey.OP_ACCEPT);
+            }
+        }
+    }
+
+    /**
+     * A pool of direct buffers of one size.  Only the selector thread uses it.
+     */
+    private static class BufferPool
+    {
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+        private final int bufferSize;
+        private final int maxKept;
+
+
+        BufferPool(int bufferSize, int maxKept)
+        {
+            this.bufferSize = bufferSize;
+            this.maxKept = maxKept;
+        }
+
+        ByteBuffer acquire()
+        {
+            ByteBuffer buffer = free.poll();
+
+            return (buffer != null) ? buffer : ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        void release(ByteBuffer buffer)
+        {
+            buffer.clear();
+
+            if(free.size() < maxKept)
+            {
+                free.push(buffer);
+            }
+        }
+    }
+}
@@ -3,77 +3,492 @@
  * Date:    2011-Dec-9
  * Time:    9:10 PM
  *
- * This class creates a single-threaded server on specified port that can be accessed by
- * one user's GUI client to play a game of TicTacToe through a ServerGame instance.
+ * This class creates a server on specified port that users' GUI clients can connect to in order
+ * to play games of TicTacToe through ServerGame instances.  Every connected user plays on their
+ * own virtual thread, so many games can run at once.
  */
 
 package TicTacToe;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class Server
 {
     /**
      * The port on which this server will run.
+     * This can be overridden by the "port=<port>" command line argument.
      */
     static int PORT = 9999;
 
+    /**
+     * Whether every connection is served stateless move requests (see MoveService) instead of games.
+     * This can be turned on with the "stateless" command line argument, and always uses a thread per connection.
+     */
+    static boolean STATELESS = false;
+
+    /**
+     * The most games that may be played at once.  Further users wait to be accepted until a game ends.
+     * This can be overridden by a numeric command line argument.
+     */
+    static int MAX_SESSIONS = 10000;
+
+    /**
+     * Whether every game is played on one thread through a SelectorServer rather than each on its own thread.
+     * This can be turned on with the "nio" command line argument.
+     */
+    static boolean NON_BLOCKING = false;
+
+    /**
+     * How long shutdown waits for games to wind down once their connections are closed.
+     */
+    static int SHUTDOWN_SECONDS = 5;
+
+    /**
+     * How long the server waits before accepting again after an accept has failed, such as when it has run
+     * out of file descriptors.
+     */
+    static int ACCEPT_BACKOFF_MILLIS = 100;
+
+    /**
+     * The tablebase of precomputed moves loaded at startup, if it exists (see Tablebase).
+     */
+    static String TABLEBASE_FILE = Tablebase.DEFAULT_FILE;
+
+    /**
+     * The local port the metrics are served on (see Metrics), or 0 to not serve them.
+     * This can be overridden by the "metrics=<port>" command line argument.
+     */
+    static int METRICS_PORT = 9990;
+
+    /**
+     * The port batches of boards are answered on over HTTP (see BatchMoveService), or 0 to not answer them.
+     * This can be turned on with the "batch=<port>" command line argument.
+     */
+    static int BATCH_PORT = 0;
+
+
+    private final ServerSocket welcomeSocket;
+    private final int maxSessions;
+
+    // Free places for new games.  The accepting thread takes one before every accept.
+    private final Semaphore sessionSlots;
+
+    // Runs every game on its own virtual thread.
+    private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+
+    // The connections of the games in progress, so shutdown can close them.
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    // Counted down once run() has returned.
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private volatile boolean running = true;
+    private volatile Thread acceptThread;
+
+    // Whether the last accept failed, so that a failure that persists is only logged once.
+    private boolean acceptFailing = false;
+
+
+    /**
+     * Binds a server to port that plays at most maxSessions games at once.
+     */
+    Server(int port, int maxSessions) throws IOException
+    {
+        this.welcomeSocket = new ServerSocket(port);
+        this.maxSessions = maxSessions;
+        this.sessionSlots = new Semaphore(maxSessions);
+    }
 
     public static void main(String[] args)
     {
-        // Have the server run until it is killed.
-        while(true)
+        for(String arg : args)
         {
-            // Monitor connections to PORT (if it is available).
-            try
+            if(arg.equals("nio"))
             {
-                ServerSocket welcomeSocket = new ServerSocket(PORT);
-                System.out.println("The server is now running on port " + PORT + "...");
+                NON_BLOCKING = true;
+            }
 
+            else if(arg.equals("parallel"))
+            {
+                TicTacToe.setParallelSearch(true);
+            }
 
-                // When welcomeSocket is contacted, it returns a socket to handle communication
-                // with the client.
-                Socket connectionSocket = welcomeSocket.accept();
-                System.out.println("A user has connected from " + connectionSocket.getInetAddress());
+            else if(arg.equals("ponder"))
+            {
+                ServerGame.PONDERING = true;
+            }
 
-                // Establish the client's input stream.
-                BufferedReader clientInput = new BufferedReader(new InputStreamReader(connectionSocket.getInputStream()));
+            else if(arg.equals("stateless"))
+            {
+                STATELESS = true;
+            }
 
-                // Establish the server's output stream.
-                DataOutputStream serverOutput = new DataOutputStream(connectionSocket.getOutputStream());
+            else if(arg.startsWith("port="))
+            {
+                PORT = Integer.parseInt(arg.substring(5));
+            }
 
+            else if(arg.startsWith("sla="))
+            {
+                ServerGame.MOVE_SLA = Duration.ofMillis(Long.parseLong(arg.substring(4)));
+            }
 
-                // Create a server-game based version of TicTacToe.
-                ServerGame game = new ServerGame(clientInput, serverOutput);
+            else if(arg.startsWith("metrics="))
+            {
+                METRICS_PORT = Integer.parseInt(arg.substring(8));
+            }
 
+            else if(arg.startsWith("batch="))
+            {
+                BATCH_PORT = Integer.parseInt(arg.substring(6));
+            }
+
+            else if(!arg.isEmpty() && arg.chars().allMatch(Character::isDigit))
+            {
+                MAX_SESSIONS = Integer.parseInt(arg);
+            }
+
+            else
+            {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        // Only ServerGame ponders, so the other modes would silently do without it.
+        if(ServerGame.PONDERING && (NON_BLOCKING || STATELESS))
+        {
+            System.err.println("\"ponder\" only works with the default threaded server; it is ignored with \"" +
+                    (STATELESS ? "stateless" : "nio") + "\".");
+            ServerGame.PONDERING = false;
+        }
+
+        loadTablebase();
+
+        try
+        {
+            // Stop accepting and wind down the games in progress when the server is killed.
+            if(NON_BLOCKING && !STATELESS)
+            {
+                SelectorServer server = new SelectorServer(PORT, MAX_SESSIONS);
+                Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
+                publishMetrics();
+                publishBatchMoves();
+                server.run();
+            }
+
+            else
+            {
+                Server server = new Server(PORT, MAX_SESSIONS);
+                Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
+                publishMetrics();
+                publishBatchMoves();
+                server.run();
+            }
+        }
+
+        // Catch any binding errors that may occur.
+        catch(IOException e)
+        {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * Accepts users and starts a game for each of them until shutdown() is called.
+     */
+    public void run()
+    {
+        acceptThread = Thread.currentThread();
+        System.out.println("The server is now running on port " + welcomeSocket.getLocalPort() +
+                " (at most " + maxSessions + " games at a time)...");
+
+        try
+        {
+            while(running)
+            {
+                sessionSlots.acquire();
+
+                // When welcomeSocket is contacted, it returns a socket to handle communication
+                // with the client.
+                Socket connectionSocket;
                 try
                 {
-                    game.start();
+                    connectionSocket = welcomeSocket.accept();
                 }
 
-                catch(CloneNotSupportedException e)
+                catch(IOException e)
                 {
-                    System.err.println("The gamed failed to start.");
-                    System.exit(-1);
+                    sessionSlots.release();
+
+                    // Closing the socket during shutdown ends the accept.
+                    if(!running)
+                    {
+                        continue;
+                    }
+
+                    // Running out of file descriptors fails every accept until a game ends, so wait rather
+                    // than retry at once.
+                    if(!acceptFailing)
+                    {
+                        System.err.println(e + " (accepting again every " + ACCEPT_BACKOFF_MILLIS + " ms)");
+                        acceptFailing = true;
+                    }
+
+                    Thread.sleep(ACCEPT_BACKOFF_MILLIS);
+                    continue;
                 }
 
-                finally
+                if(acceptFailing)
                 {
-                    connectionSocket.close();
+                    System.err.println("The server is accepting users again.");
+                    acceptFailing = false;
                 }
+
+                connections.add(connectionSocket);
+                sessions.execute(() -> play(connectionSocket));
+            }
+        }
+
+        // Shutdown interrupts the wait for a free game slot.
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        finally
+        {
+            sessions.shutdown();
+
+            try
+            {
+                sessions.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+            }
+
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Stops accepting users, closes the connections of the games in progress and waits for run() to return.
+     */
+    public void shutdown()
+    {
+        if(!running)
+        {
+            return;
+        }
+
+        running = false;
+        System.out.println("The server is shutting down...");
+
+        try
+        {
+            welcomeSocket.close();
+        }
+
+        catch(IOException e)
+        {
+            System.err.println(e);
+        }
+
+        Thread accepting = acceptThread;
+        if(accepting != null)
+        {
+            accepting.interrupt();
+        }
+
+        for(Socket connectionSocket : connections)
+        {
+            try
+            {
+                connectionSocket.close();
             }
 
-            // Catch any binding/IO errors that may occur.
             catch(IOException e)
             {
                 System.err.println(e);
             }
         }
+
+        try
+        {
+            stopped.await(SHUTDOWN_SECONDS * 2, TimeUnit.SECONDS);
+        }
+
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
     }
 
+    /**
+     * Plays games with the user on connectionSocket until they leave.  Runs on the game's own virtual thread.
+     */
+    private void play(Socket connectionSocket)
+    {
+        System.out.println("A user has connected from " + connectionSocket.getInetAddress());
+        Metrics.get().sessionOpened();
+
+        try
+        {
+            // Shutdown may have closed the other connections before this one was added; skip the game.
+            if(!running)
+            {
+                return;
+            }
+
+            // Establish the client's input stream.  Latin-1 maps every byte to one char, so binary clients'
+            // bytes come through the reader unchanged.
+            BufferedReader clientInput = new BufferedReader(new InputStreamReader(
+                    Metrics.get().countIn(connectionSocket.getInputStream()), StandardCharsets.ISO_8859_1));
+
+            // Establish the server's output stream.  ServerGame sends each turn in one flush, so there is
+            // nothing for Nagle's algorithm to gather and it would only hold the turn back.
+            connectionSocket.setTcpNoDelay(true);
+            DataOutputStream serverOutput = new DataOutputStream(new BufferedOutputStream(
+                    Metrics.get().countOut(connectionSocket.getOutputStream())));
+
+
+            // Answer stateless move requests, or create a server-game based version of TicTacToe.
+            if(STATELESS)
+            {
+                new MoveService(clientInput, serverOutput).serve();
+            }
+
+            else
+            {
+                ServerGame game = new ServerGame(clientInput, serverOutput);
+                game.start();
+            }
+        }
+
+        // Catch any IO errors, including the connection being closed by shutdown.
+        catch(IOException e)
+        {
+            if(running)
+            {
+                System.err.println(e);
+            }
+        }
+
+        finally
+        {
+            connections.remove(connectionSocket);
+
+            try
+            {
+                connectionSocket.close();
+            }
+
+            catch(IOException e)
+            {
+                System.err.println(e);
+            }
+
+            sessionSlots.release();
+            Metrics.get().sessionClosed();
+        }
+    }
+
+    /**
+     * Registers the metrics MBean and serves the metrics over HTTP on METRICS_PORT, unless it is 0.
+     */
+    private static void publishMetrics()
+    {
+        if(METRICS_PORT == 0)
+        {
+            return;
+        }
+
+        try
+        {
+            Metrics.get().publish(METRICS_PORT);
+            System.out.println("Metrics are served at http://localhost:" + METRICS_PORT + "/metrics.");
+        }
+
+        catch(IOException e)
+        {
+            System.err.println("The metrics could not be published: " + e);
+        }
+    }
+
+    /**
+     * Answers batches of boards over HTTP on BATCH_PORT, unless it is 0.
+     */
+    private static void publishBatchMoves()
+    {
+        if(BATCH_PORT == 0)
+        {
+            return;
+        }
+
+        try
+        {
+            BatchMoveService.publish(BATCH_PORT);
+            System.out.println("Batches of boards are answered at http://localhost:" + BATCH_PORT + "/moves.");
+        }
+
+        catch(IOException e)
+        {
+            System.err.println("The batch service could not be started: " + e);
+        }
+    }
+
+    /**
+     * Memory-maps the tablebase so the computer's moves are looked up rather than searched.
+     * The table is only used if it agrees with the search on every position.
+     */
+    private static void loadTablebase()
+    {
+        Path file = Paths.get(TABLEBASE_FILE);
+
+        if(!Files.exists(file))
+        {
+            System.out.println("No tablebase found at " + file + "; the computer will search every move.");
+            return;
+        }
+
+        try
+        {
+            Tablebase tablebase = Tablebase.load(file);
+            int mismatches = tablebase.verify();
+
+            if(mismatches != 0)
+            {
+                System.err.println("The tablebase disagrees with the search on " + mismatches + " positions; ignoring it.");
+                return;
+            }
+
+            TicTacToe.setTablebase(tablebase);
+            System.out.println("The tablebase has been loaded from " + file + ".");
+        }
+
+        catch(IOException e)
+        {
+            System.err.println("The tablebase could not be loaded: " + e);
+        }
+    }
 }
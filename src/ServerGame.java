@@ -5,28 +5,82 @@
  *
  * This class instantiates a TacTacToe game and runs until it is complete.
  * It is used by Server to allow a user to play over the network.
+ *
+ * Games are played on the classic 3x3 board unless the user asks for another by sending
+ * "#NG rows columns winLength" instead of a move, or after a game instead of "#NG".  The game is then
+ * restarted on that board (see MNKGame), and its boards are sent with their dimensions.
+ *
+ * A move that can't be played is answered with "#E" instead of the board, and the user sends another.
+ * Output is flushed only when the user has to answer it, so each turn goes out in a single write.
  */
 
 package TicTacToe;
 
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.InputMismatchException;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 public class ServerGame
 {
-    private TicTacToe game;
+    /**
+     * The longest the computer may take to choose a move, so moves stay quick however many games the
+     * server is playing.  This can be overridden by the server's "sla=<milliseconds>" argument.
+     */
+    static Duration MOVE_SLA = Duration.ofMillis(200);
+
+    /**
+     * Whether the computer thinks about its replies while the user chooses their move (see Ponderer).
+     * This is turned on by the server's "ponder" argument.
+     */
+    static boolean PONDERING = false;
+
+    // Numbers the sessions so recorded events (see GameEvents) can be told apart.
+    private static final AtomicLong nextSession = new AtomicLong();
+
+    /**
+     * Sent in place of the board when the user's move can't be played.
+     */
+    static final String INVALID_MOVE = "#E\n";
+
+    // How each result() is named in GameOver events.
+    private static final String[] RESULT_NAMES = {"on-going", "player", "computer", "tie"};
+
+    private BoardGame game;
     private Scanner scanner;
     private BufferedReader input;
     private DataOutputStream output;
 
+    // The board is drawn here before it is sent, so sending it builds no Strings.
+    private final ByteBuffer boardLine = ByteBuffer.allocate(BoardGame.MAX_BOARD_LINE);
+
+    // Whether the client has been given the chance to ask for the binary protocol, and whether it did.
+    private boolean negotiated = false;
+    private boolean binary = false;
+
+    // The board the user plays on.  Binary clients can't ask for another, so they always play TicTacToe.
+    private int rows = 3;
+    private int columns = 3;
+    private int winLength = 3;
+
+    // This session's number, and how many turns have been played in the current game.
+    private final long session = nextSession.incrementAndGet();
+    private int turns = 0;
+
+    // Thinks ahead while the user chooses, and the user's last move, whose reply it may have ready.
+    private final Ponderer ponderer = new Ponderer(MOVE_SLA);
+    private int lastMove = -1;
+
 
     /**
      * Establishes a server-based game of TicTacToe based off specified
-     * input and output streams.
+     * input and output streams.  The output should be buffered; it is flushed once per turn.
      */
     ServerGame(BufferedReader input, DataOutputStream output)
     {
@@ -34,38 +88,53 @@ public class ServerGame
         this.output = output;
     }
 
-    // Establish and begin a new game of TicTacToe.
-    public void start() throws InputMismatchException, CloneNotSupportedException, IOException
+    // Establish and play games of TicTacToe until the user would not like another.
+    public void start() throws InputMismatchException, IOException
     {
+        // One parser reads the user's moves for the whole session.
         scanner = new Scanner(input);
 
-        // Establish a new game of TicTacToe!
-        game = new TicTacToe();
-        game.chooseFirstPlayer();
+        // Play games until the user would not like another.  Each game reuses the last one's board
+        // where it can, so a session's memory doesn't grow with the games played.
+        try
+        {
+            do
+            {
+                // Establish a new game of TicTacToe!
+                newGame();
+                play();
+            }
+            while(playAgain());
+        }
+
+        // Stop thinking for a user who has gone.
+        finally
+        {
+            ponderer.cancel();
+        }
 
-        // Play until the game is over!
+        // Lose the streams and exit back to Server.
+        System.out.println("The user would NOT like to play another game.");
+        input.close();
+        output.close();
+    }
+
+    /**
+     * Plays the current game until it is over and alerts the user to how it ended.
+     */
+    private void play() throws IOException
+    {
+        // Play until the game is over!  The user may switch to a new game on another board part-way.
         while(!game.isOver())
         {
-            // If the computer has the first move...
-            if(game.getFirstTurn() == game.getCOMPUTER_TURN())
+            if(game.getWhoseTurn() == game.getCOMPUTER_TURN())
             {
                 doComputerTurn();
-
-                if(!game.isOver())
-                {
-                    doPlayerTurn();
-                }
             }
 
-            // Otherwise, the player has the first move...
             else
             {
                 doPlayerTurn();
-
-                if(!game.isOver())
-                {
-                    doComputerTurn();
-                }
             }
         }
 
@@ -74,96 +143,342 @@ public class ServerGame
         //output.writeBytes(game.drawBoard());
 
         // Determine how the game ended and alert user.
+        Metrics.get().gameFinished(game.result());
+
+        GameEvents.GameOver gameOver = new GameEvents.GameOver();
+        gameOver.session = session;
+        gameOver.result = RESULT_NAMES[game.result()];
+        gameOver.turns = turns;
+        gameOver.commit();
+
         switch(game.result())
         {
             // Player has won.
             case 1:
                 System.out.println("The player has won the game.");
-                output.writeBytes("#P\n");
+                if(!binary) output.writeBytes("#P\n");
                 break;
             // Computer has won.
             case 2:
                 System.out.println("The computer has won the game.");
-                output.writeBytes("#C\n");
+                if(!binary) output.writeBytes("#C\n");
                 break;
             // Game is a tie.
             case 3:
                 System.out.println("The game is a tie.");
-                output.writeBytes("#T\n");
+                if(!binary) output.writeBytes("#T\n");
                 break;
         }
 
+        // Binary clients get the final board along with the result.
+        if(binary)
+        {
+            output.writeInt(BinaryProtocol.frame(game.result(), packedBoard()));
+        }
+
+        output.flush();
+    }
 
-        // Ascertain if user would like to play again.
+    /**
+     * Ascertains if the user would like to play again, choosing the next game's board if they asked for one.
+     */
+    private boolean playAgain() throws IOException
+    {
         System.out.println("Determining if user would like to play another game...");
 
-        String decision = "";
+        String decision = binary ? readBinaryDecision() : "";
 
-        while(!decision.equals("#NG") && !decision.equals("#CG"))
+        while(!(decision.startsWith("#NG") && chooseBoard(decision.substring(3))) && !decision.equals("#CG"))
         {
-            decision = input.readLine();
+            // A decision that can't be understood is answered, so the user isn't left waiting.  Blank lines are
+            // left over from the last move.
+            if(!decision.isBlank())
+            {
+                output.writeBytes(INVALID_MOVE);
+                output.flush();
+            }
+
+            // The decision is read through the same parser as the moves, which may hold it already.
+            if(!scanner.hasNextLine())
+            {
+                throw new EOFException("The game was terminated by the user.");
+            }
+
+            decision = scanner.nextLine();
         }
 
-        // If applicable, restart the game for the user.
-        if(decision.equals("#NG"))
+        if(decision.startsWith("#NG"))
         {
             System.out.println("The user would like to play another game.");
-            this.start();
+            return true;
         }
 
-        // Otherwise, lose the streams and exit back to Server.
-        else
-        {
-            System.out.println("The user would NOT like to play another game.");
-            input.close();
-            output.close();
-        }
+        return false;
     }
 
 
     // / Run through the player's turn.
     public void doPlayerTurn() throws IOException
     {
-        game.setWhoseTurn(game.getPLAYER_TURN());
+        GameEvents.Turn event = new GameEvents.Turn();
+        event.begin();
 
         int userMove = -1;
+        boolean asked = false;
+
+        // Use the time the user takes to think about the computer's replies.
+        if(PONDERING)
+        {
+            ponderer.start(game);
+        }
 
         // Ask the user for his or her move until he or she enters a valid one.
         while(!game.legalMove(userMove))
         {
-            output.writeBytes(game.drawBoard());
+            // Every time after the first, the user is being asked again.  They have the board already, so
+            // they are only told their move can't be played.
+            if(asked)
+            {
+                Metrics.get().invalidMove();
+            }
+
+            if(binary)
+            {
+                output.writeInt(BinaryProtocol.frame(asked ? BinaryProtocol.INVALID_MOVE : BinaryProtocol.YOUR_MOVE, packedBoard()));
+                output.flush();
+
+                asked = true;
+                userMove = readByte();
+                continue;
+            }
+
+            if(asked)
+            {
+                output.writeBytes(INVALID_MOVE);
+            }
+
+            else
+            {
+                sendBoard();
+            }
+
+            // Everything for this turn goes out together, once the user has to answer it.
+            output.flush();
+            asked = true;
+
+            // The first board is always sent as text.  Switch to binary if the client answers it with the handshake.
+            if(!negotiated && negotiate())
+            {
+                asked = false;
+                continue;
+            }
 
             // Get the user's desired move.
             try
             {
+                // Start over on the board asked for, if it can be played.
+                if(scanner.hasNext("#NG"))
+                {
+                    scanner.next();
+
+                    if(chooseBoard(scanner.nextLine()))
+                    {
+                        // The game given up on is counted, so every game started is also finished.
+                        Metrics.get().gameAbandoned();
+                        newGame();
+                        return;
+                    }
+
+                    continue;
+                }
+
                 userMove = scanner.nextInt();
             }
 
             // If the user enters a nonInt value, set his or her move equal to -1 (to force reentry).
-            // Reset the scanner to avoid endless looping.
+            // Skip past the value to avoid endless looping.
             catch(InputMismatchException e)
             {
                 userMove = -1;
-                scanner = new Scanner(input);
+                scanner.next();
             }
             
             // Gracefully exist should the user close the window or the game otherwise ends suddenly.
             catch(NoSuchElementException e)
             {
-                System.err.println("The game was terminated by the user.");
+                throw new EOFException("The game was terminated by the user.");
             }
         }
 
         // Make the user's legal move.
         game.placePiece(game.getPLAYER_TURN(), userMove);
+        game.setWhoseTurn(game.getCOMPUTER_TURN());
+        lastMove = userMove;
+
+        event.session = session;
+        event.turn = ++turns;
+        event.computer = false;
+        event.commit();
+    }
+
+    /**
+     * Starts a new game on the chosen board, with a random first player.  The last game is cleared and
+     * played again if it was on the same board.
+     */
+    private void newGame()
+    {
+        game = gameOn(game, rows, columns, winLength);
+        game.chooseFirstPlayer();
+        game.setWhoseTurn(game.getFirstTurn());
+        turns = 0;
+
+        ponderer.cancel();
+        lastMove = -1;
+
+        Metrics.get().gameStarted();
+    }
+
+    /**
+     * Returns a game on rows by columns with winLength in a row: last, cleared, if it was played on that
+     * board, and a new TicTacToe or MNKGame otherwise.
+     */
+    static BoardGame gameOn(BoardGame last, int rows, int columns, int winLength)
+    {
+        boolean classic = rows == 3 && columns == 3 && winLength == 3;
+
+        if(classic ? last instanceof TicTacToe : last instanceof MNKGame board && board.isPlayedOn(rows, columns, winLength))
+        {
+            last.reset();
+            return last;
+        }
+
+        return classic ? new TicTacToe() : new MNKGame(rows, columns, winLength);
+    }
+
+    /**
+     * Chooses the board for the next game from what follows "#NG" in a request: nothing to keep the
+     * current board, or "rows columns winLength".  Returns false, keeping the current board, if the
+     * request can't be understood or the board can't be played.
+     */
+    private boolean chooseBoard(String request)
+    {
+        if(request.isBlank())
+        {
+            return true;
+        }
+
+        int[] dimensions = MNKGame.parseDimensions(request.trim().split("\\s+"));
+
+        if(dimensions == null)
+        {
+            return false;
+        }
+
+        rows = dimensions[0];
+        columns = dimensions[1];
+        winLength = dimensions[2];
+
+        return true;
+    }
+
+    /**
+     * Writes the board's line to the output, to be sent at the end of the turn.
+     */
+    private void sendBoard() throws IOException
+    {
+        boardLine.clear();
+        game.drawBoard(boardLine);
+        output.write(boardLine.array(), 0, boardLine.position());
+    }
+
+    /**
+     * Returns the board of a binary client's game, packed as BinaryProtocol sends it.
+     */
+    private int packedBoard()
+    {
+        return ((TicTacToe)game).getPackedBoard();
     }
 
 
+    /**
+     * Checks whether the client's first byte is the binary handshake.  If it is, the handshake is
+     * answered and the rest of the connection uses the binary protocol.  Otherwise the byte is left
+     * for the text protocol to read.  Returns true if the client switched to binary.
+     */
+    private boolean negotiate() throws IOException
+    {
+        negotiated = true;
+
+        input.mark(1);
+        if(input.read() == BinaryProtocol.HANDSHAKE)
+        {
+            binary = true;
+            output.write(BinaryProtocol.HANDSHAKE);
+
+            return true;
+        }
+
+        input.reset();
+
+        return false;
+    }
+
+    /**
+     * Reads a single byte sent by a binary client.
+     */
+    private int readByte() throws IOException
+    {
+        int next = input.read();
+
+        if(next < 0)
+        {
+            throw new EOFException("The game was terminated by the user.");
+        }
+
+        return next;
+    }
+
+    /**
+     * Reads a binary client's bytes until it asks for a new game or to close the game.
+     * Returns the decision as the text protocol would send it.
+     */
+    private String readBinaryDecision() throws IOException
+    {
+        while(true)
+        {
+            int next = readByte();
+
+            if(next == BinaryProtocol.NEW_GAME) return "#NG";
+            if(next == BinaryProtocol.CLOSE_GAME) return "#CG";
+        }
+    }
+
     // Run through the computer's turn.
-    public void doComputerTurn() throws CloneNotSupportedException
+    public void doComputerTurn()
     {
-        game.setWhoseTurn(game.getCOMPUTER_TURN());
-        game.computerMove();
+        GameEvents.Turn event = new GameEvents.Turn();
+        event.begin();
+
+        // A reply pondered while the user thought is played straight away.  Otherwise, once any game has
+        // met this position, the move comes straight from the shared move cache.
+        int reply = ponderer.reply(lastMove);
+
+        if(reply >= 0 && game.legalMove(reply))
+        {
+            game.placePiece(game.getCOMPUTER_TURN(), reply);
+        }
+
+        else
+        {
+            game.computerMove(MOVE_SLA);
+        }
+
+        game.setWhoseTurn(game.getPLAYER_TURN());
+
+        event.session = session;
+        event.turn = ++turns;
+        event.computer = true;
+        event.commit();
     }
 
 }
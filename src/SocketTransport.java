@@ -0,0 +1,148 @@
+/**
+ * Plays a game on a Server over TCP, in the text protocol or the compact binary one (see
+ * BinaryProtocol).  Binary frames are translated to the text protocol's form.  Only the binary protocol
+ * carries a game's final board; over text, the result follows the last board before the game ended.
+ */
+
+package TicTacToe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public class SocketTransport implements GameTransport
+{
+    private final Socket socket;
+
+    private PrintWriter out;
+    private BufferedReader in;
+
+    // Whether to speak the binary protocol, and its streams if so.
+    private final boolean binary;
+    private DataOutputStream binaryOut;
+    private DataInputStream binaryIn;
+
+    // A binary game's result, held back while its final board is received first.
+    private String result;
+
+
+    /**
+     * Connects to the server at host and port, asking for the binary protocol if binary is true.
+     */
+    public SocketTransport(String host, int port, boolean binary) throws IOException
+    {
+        this.socket = new Socket(host, port);
+        this.binary = binary;
+
+        // Each message is written whole, so there is nothing for Nagle's algorithm to gather.
+        socket.setTcpNoDelay(true);
+
+        if(binary)
+        {
+            binaryOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            binaryIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            negotiateBinary();
+        }
+
+        else
+        {
+            out = new PrintWriter(socket.getOutputStream(), true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    /**
+     * Asks the server for the binary protocol.  The server's first board always arrives as text, so
+     * everything up to the server's answering handshake is skipped.
+     */
+    private void negotiateBinary() throws IOException
+    {
+        binaryOut.write(BinaryProtocol.HANDSHAKE);
+        binaryOut.flush();
+
+        while(binaryIn.readUnsignedByte() != BinaryProtocol.HANDSHAKE)
+        {
+        }
+    }
+
+    /**
+     * Sends a move or command: the text form, or the single byte of the binary form.
+     */
+    public void send(String message) throws IOException
+    {
+        if(!binary)
+        {
+            out.println(message);
+            return;
+        }
+
+        if(message.equals("#NG")) binaryOut.write(BinaryProtocol.NEW_GAME);
+        else if(message.equals("#CG")) binaryOut.write(BinaryProtocol.CLOSE_GAME);
+        else binaryOut.write(Integer.parseInt(message));
+
+        binaryOut.flush();
+    }
+
+    /**
+     * Returns the server's next command.  A binary game's final board is returned before its result.
+     */
+    public String receive() throws IOException
+    {
+        if(!binary)
+        {
+            return in.readLine();
+        }
+
+        if(result != null)
+        {
+            String toReturn = result;
+            result = null;
+
+            return toReturn;
+        }
+
+        int frame;
+
+        try
+        {
+            frame = binaryIn.readInt();
+        }
+
+        catch(EOFException e)
+        {
+            return null;
+        }
+
+        switch(BinaryProtocol.status(frame))
+        {
+            case BinaryProtocol.YOUR_MOVE:
+                break;
+            case BinaryProtocol.INVALID_MOVE:
+                return "#E";
+            case 1:
+                result = "#P";
+                break;
+            case 2:
+                result = "#C";
+                break;
+            default:
+                result = "#T";
+                break;
+        }
+
+        return BinaryProtocol.boardString(BinaryProtocol.board(frame));
+    }
+
+    public void close() throws IOException
+    {
+        socket.close();
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * A precomputed table of the computer's best move in every reachable position.
+ *
+ * The table is solved once, backwards from the finished games, and written to a file that the
+ * Server memory-maps at startup.  TicTacToe.bestMove() then answers with a single lookup.
+ *
+ * Run this class to generate the file: java TicTacToe.Tablebase [file]
+ */
+
+package TicTacToe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class Tablebase
+{
+    /**
+     * The file the Server loads the table from unless told otherwise.
+     */
+    public static final String DEFAULT_FILE = "tictactoe.tb";
+
+    /**
+     * Every board is numbered in base 3, one digit per grid: 0 for free, 1 for the player and 2 for the computer.
+     */
+    static final int POSITIONS = 19683;
+
+    // Identifies a tablebase file ("TTTB").
+    private static final int MAGIC = 0x54545442;
+    private static final int HEADER_SIZE = 4;
+
+    /**
+     * Layout of an entry.  Each position takes a single byte.
+     *
+     * bits 0-3: the computer's best move
+     * bits 4-5: the value of the position (judge() / 50)
+     * bit    7: set if the position is reachable with the computer to move
+     */
+    private static final int MOVE_MASK    = 0x0F;
+    private static final int VALUE_SHIFT  = 4;
+    private static final int VALUE_MASK   = 0x03;
+    private static final int ENTRY_SOLVED = 0x80;
+
+    /**
+     * BASE3[mask] is the position number of a board holding the player's pieces on mask.
+     * Doubling it gives the number for the computer's pieces.
+     */
+    private static final int[] BASE3 = new int[512];
+
+    static
+    {
+        for(int mask = 0; mask < 512; mask++)
+        {
+            int power = 1;
+
+            for(int i = 0; i < 9; i++)
+            {
+                if((mask & (1 << i)) != 0)
+                {
+                    BASE3[mask] += power;
+                }
+
+                power *= 3;
+            }
+        }
+    }
+
+    /**
+     * The entries of the table, one per position, following the file header.
+     */
+    private final ByteBuffer entries;
+
+
+    private Tablebase(ByteBuffer entries)
+    {
+        this.entries = entries;
+    }
+
+    /**
+     * Memory-maps a tablebase file written by generate().
+     */
+    public static Tablebase load(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if(channel.size() != HEADER_SIZE + POSITIONS)
+            {
+                throw new IOException(file + " is not a tablebase file.");
+            }
+
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(mapped.getInt(0) != MAGIC)
+            {
+                throw new IOException(file + " is not a tablebase file.");
+            }
+
+            mapped.position(HEADER_SIZE);
+
+            return new Tablebase(mapped.slice());
+        }
+    }
+
+    /**
+     * Returns the position number of a board.
+     */
+    static int position(int playerBoard, int computerBoard)
+    {
+        return BASE3[playerBoard] + 2 * BASE3[computerBoard];
+    }
+
+    /**
+     * Returns the computer's best move on the given board, or -1 if the table holds no such position.
+     */
+    int bestMove(int playerBoard, int computerBoard)
+    {
+        int entry = entries.get(position(playerBoard, computerBoard));
+
+        return ((entry & ENTRY_SOLVED) != 0) ? entry & MOVE_MASK : -1;
+    }
+
+    /**
+     * Returns the value (as in judge()) of the given board with the computer to move, or -1 if the
+     * table holds no such position.
+     */
+    int value(int playerBoard, int computerBoard)
+    {
+        int entry = entries.get(position(playerBoard, computerBoard));
+
+        return ((entry & ENTRY_SOLVED) != 0) ? ((entry >> VALUE_SHIFT) & VALUE_MASK) * 50 : -1;
+    }
+
+    /**
+     * Checks every position in the table against the search.  Returns the number of positions where the
+     * table's move differs from bestMove() or its value from bestGuess() after that move.
+     */
+    public int verify()
+    {
+        int mismatches = 0;
+
+        for(int position = 0; position < POSITIONS; position++)
+        {
+            if((entries.get(position) & ENTRY_SOLVED) == 0)
+            {
+                continue;
+            }
+
+            TicTacToe game = decode(position);
+            game.setWhoseTurn(game.getCOMPUTER_TURN());
+
+            int move = entries.get(position) & MOVE_MASK;
+            int value = ((entries.get(position) >> VALUE_SHIFT) & VALUE_MASK) * 50;
+
+            if(game.searchBestMove() != move)
+            {
+                mismatches++;
+                continue;
+            }
+
+            game.placePiece(game.getCOMPUTER_TURN(), move);
+
+            if(game.bestGuess(8) != value)
+            {
+                mismatches++;
+            }
+        }
+
+        return mismatches;
+    }
+
+    /**
+     * Solves every reachable position and writes the table to file.
+     *
+     * Every move adds a piece, so the positions are solved in layers from the full board down to the
+     * empty one: by the time a position is reached, every position it leads to has been solved.
+     */
+    public static void generate(Path file) throws IOException
+    {
+        // reachable[0] marks positions reached with the player to move, reachable[1] with the computer.
+        boolean[][] reachable = new boolean[2][POSITIONS];
+        markReachable(reachable, new TicTacToe(), 0);
+        markReachable(reachable, new TicTacToe(), 1);
+
+        // Values of positions (as in judge()) with the player or computer to move.
+        int[][] values = new int[2][POSITIONS];
+
+        ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE + POSITIONS);
+        table.putInt(MAGIC);
+
+        for(int pieces = 9; pieces >= 0; pieces--)
+        {
+            for(int position = 0; position < POSITIONS; position++)
+            {
+                if(pieceCount(position) != pieces)
+                {
+                    continue;
+                }
+
+                TicTacToe game = decode(position);
+
+                for(int side = 0; side < 2; side++)
+                {
+                    if(!reachable[side][position])
+                    {
+                        continue;
+                    }
+
+                    if(game.isOver())
+                    {
+                        values[side][position] = game.judge();
+                        continue;
+                    }
+
+                    // The computer takes the highest value, the player the lowest.  Ties go to the lowest grid.
+                    int best = -1, bestValue = (side == 1) ? -1 : 101;
+                    int digit = 1;
+
+                    for(int move = 0; move < 9; move++, digit *= 3)
+                    {
+                        if(!game.legalMove(move))
+                        {
+                            continue;
+                        }
+
+                        int child = position + ((side == 1) ? 2 : 1) * digit;
+                        int childValue = values[1 - side][child];
+
+                        if((side == 1) ? childValue > bestValue : childValue < bestValue)
+                        {
+                            best = move;
+                            bestValue = childValue;
+                        }
+                    }
+
+                    values[side][position] = bestValue;
+
+                    if(side == 1)
+                    {
+                        table.put(HEADER_SIZE + position,
+                                (byte)(ENTRY_SOLVED | ((bestValue / 50) << VALUE_SHIFT) | best));
+                    }
+                }
+            }
+        }
+
+        Files.write(file, table.array());
+    }
+
+    /**
+     * Marks every position reachable from game, with side (0 for the player, 1 for the computer) to move.
+     */
+    private static void markReachable(boolean[][] reachable, TicTacToe game, int side)
+    {
+        int position = encode(game);
+
+        if(reachable[side][position])
+        {
+            return;
+        }
+
+        reachable[side][position] = true;
+
+        if(game.isOver())
+        {
+            return;
+        }
+
+        for(int move : game.generateLegalMoves())
+        {
+            game.placePiece((side == 1) ? game.getCOMPUTER_TURN() : game.getPLAYER_TURN(), move);
+            markReachable(reachable, game, 1 - side);
+            game.undoMove(move);
+        }
+    }
+
+    /**
+     * Returns a game holding the board with the given position number.
+     */
+    private static TicTacToe decode(int position)
+    {
+        TicTacToe game = new TicTacToe();
+
+        for(int i = 0; i < 9; i++, position /= 3)
+        {
+            if(position % 3 == 1)
+            {
+                game.placePiece(game.getPLAYER_TURN(), i);
+            }
+
+            else if(position % 3 == 2)
+            {
+                game.placePiece(game.getCOMPUTER_TURN(), i);
+            }
+        }
+
+        return game;
+    }
+
+    /**
+     * Returns the position number of a game's board.
+     */
+    private static int encode(TicTacToe game)
+    {
+        return position(game.getPlayerBoard(), game.getComputerBoard());
+    }
+
+    /**
+     * Returns the number of pieces on the board with the given position number.
+     */
+    private static int pieceCount(int position)
+    {
+        int pieces = 0;
+
+        for(int i = 0; i < 9; i++, position /= 3)
+        {
+            if(position % 3 != 0)
+            {
+                pieces++;
+            }
+        }
+
+        return pieces;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Path file = Paths.get((args.length > 0) ? args[0] : DEFAULT_FILE);
+
+        generate(file);
+        System.out.println("The tablebase has been written to " + file + ".");
+    }
+}
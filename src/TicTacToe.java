@@ -9,9 +9,13 @@
 
 package TicTacToe;
 
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class TicTacToe implements Cloneable
+public class TicTacToe implements Cloneable, BoardGame
 {
     /**
      * Various constants used to track grid state or the active player.
@@ -21,14 +25,90 @@ public class TicTacToe implements Cloneable
     private final int PLAYER_TURN   = 1;
     private final int COMPUTER_TURN = -1;
 
-    // The mark denoting on the printed grid the moves made by player or computer.
-    private final char NOBODY_MARK   = ' ';
-    private final char PLAYER_MARK   = 'X';
-    private final char COMPUTER_MARK = 'O';
-
     // The difficulty of the game.  This value is used by bestGuess().
     private final int GAME_LEVEL = 8;
 
+    // The lowest and highest values judge() can return.  These bound the search window.
+    private final int LOWEST_GUESS  = 0;
+    private final int HIGHEST_GUESS = 100;
+
+    /**
+     * Board masks.  Bit i of a mask refers to grid i, so a full board is the low 9 bits.
+     */
+    private static final int FULL_BOARD = 0x1FF;
+
+    // Every row, column and diagonal that wins the game.
+    private static final int[] WIN_MASKS =
+    {
+        0x007, 0x038, 0x1C0,    // rows
+        0x049, 0x092, 0x124,    // columns
+        0x111, 0x054            // diagonals
+    };
+
+    // WINNING[mask] is true if the grids in mask complete a line, so a board is judged with one lookup.
+    private static final boolean[] WINNING = new boolean[FULL_BOARD + 1];
+
+    // COMPLETIONS[mask] is a mask of the grids that would complete a line for the grids in mask.
+    private static final int[] COMPLETIONS = new int[FULL_BOARD + 1];
+
+    static
+    {
+        for(int mask = 0; mask <= FULL_BOARD; mask++)
+        {
+            for(int line : WIN_MASKS)
+            {
+                int missing = line & ~mask;
+
+                if(missing == 0)
+                {
+                    WINNING[mask] = true;
+                }
+
+                else if(Integer.bitCount(missing) == 1)
+                {
+                    COMPLETIONS[mask] |= missing;
+                }
+            }
+        }
+    }
+
+    // The order in which the search tries grids: center, corners, then edges.
+    private static final int[] MOVE_ORDER = {4, 0, 2, 6, 8, 1, 3, 5, 7};
+
+    // The number of buckets in the transposition table shared by every search.
+    private static final int TABLE_BUCKETS = 4096;
+
+    // The number of buckets in the move cache shared by every game.  It holds every position the computer
+    // can face.
+    private static final int CACHE_BUCKETS = 4096;
+
+    // The fewest free grids a parallel search splits over several threads.  Smaller searches finish
+    // sooner than the threads could be handed their work.
+    private static final int PARALLEL_THRESHOLD = 8;
+
+    // A search with a time budget looks at the clock once every CLOCK_INTERVAL positions (a power of two).
+    private static final int CLOCK_INTERVAL = 256;
+
+    /**
+     * Results of earlier searches, shared by every game so equivalent positions are only evaluated once.
+     */
+    private static final TranspositionTable table = new TranspositionTable(TABLE_BUCKETS);
+
+    /**
+     * The best moves found by earlier searches, shared by every game so each position is only searched once.
+     */
+    private static final MoveCache moveCache = new MoveCache(CACHE_BUCKETS);
+
+    /**
+     * The precomputed best moves, if the server has loaded them.  Otherwise every move is searched.
+     */
+    private static volatile Tablebase tablebase;
+
+    /**
+     * Whether searches with enough free grids spread their root moves over the common ForkJoinPool.
+     */
+    private static volatile boolean parallelSearch = false;
+
     /**
      * An integer (using the ..._TURN constants above) describing whose turn it is to make a move.
      */
@@ -40,20 +120,38 @@ public class TicTacToe implements Cloneable
     private int firstTurn = NOBODY_TURN;
 
     /**
-     * An array representing the current game's board state as a grid.
+     * A mask of the grids taken by the player.
      */
-    private char[] grid = new char[9];
+    private int playerBoard = 0;
 
     /**
-     * An array representing the current set of moves made in this game.
-     * moves[i] will contain a 0 if grid i is unavailable or a 1 if it is available.
+     * A mask of the grids taken by the computer.
+     */
+    private int computerBoard = 0;
+
+    /**
+     * Scratch space for the search: orderedMoves[n] holds the moves being tried at a position with n pieces.
      */
-    private int[] moves = new int[9];
+    private int[][] orderedMoves = new int[9][9];
 
     /**
-     * Represents how many moves have been made during the course of the game.
+     * When the search in progress has to give up (System.nanoTime()), whether it has, and how many
+     * positions it has visited.
      */
-    private int numMoves = 0;
+    private long deadline = Long.MAX_VALUE;
+    private boolean outOfTime = false;
+    private long nodes = 0;
+
+    /**
+     * How many moves beyond its own the deepest finished search of the last bestMove(budget) looked.
+     */
+    private int depthReached = 0;
+
+    /**
+     * Set to make the search in progress give up, as if its deadline had passed (see speculativeMove()).
+     */
+    private static final AtomicBoolean NEVER_CANCELLED = new AtomicBoolean();
+    private AtomicBoolean cancelled = NEVER_CANCELLED;
 
 
     /**
@@ -61,13 +159,17 @@ public class TicTacToe implements Cloneable
      */
     public TicTacToe()
     {
-        // Fill out the board so it is empty.
-        for(int i = 0; i < 9; i++)
-        {
-            grid[i] = NOBODY_MARK;
-        }
+    }
 
-        generateMoves();
+    /**
+     * Clears the board so the game can be played again, leaving the first player to be chosen.
+     */
+    public void reset()
+    {
+        playerBoard = 0;
+        computerBoard = 0;
+        whoseTurn = NOBODY_TURN;
+        firstTurn = NOBODY_TURN;
     }
 
     /**
@@ -75,14 +177,27 @@ public class TicTacToe implements Cloneable
      */
     public TicTacToe clone() throws CloneNotSupportedException
     {
-        // Need to clone the arrays since they're treated as objects in Java.
+        // The board is held entirely in primitive masks.  Only the search's scratch space can't be shared.
         TicTacToe clone = (TicTacToe)super.clone();
-        clone.grid = this.grid.clone();
-        clone.moves = this.moves.clone();
+        clone.orderedMoves = new int[9][9];
 
         return clone;
     }
 
+    /**
+     * Returns a copy of this game that can be played on its own.
+     */
+    public TicTacToe copy()
+    {
+        TicTacToe copy = new TicTacToe();
+        copy.playerBoard = playerBoard;
+        copy.computerBoard = computerBoard;
+        copy.whoseTurn = whoseTurn;
+        copy.firstTurn = firstTurn;
+
+        return copy;
+    }
+
     /**
      * Randomly determines who will go first in this game and return a String describing
      * the player.
@@ -90,9 +205,7 @@ public class TicTacToe implements Cloneable
     public void chooseFirstPlayer()
     {
         // Randomly determine whether the player or computer will get to go first during this game.
-        Random generator = new Random();
-
-        if(generator.nextInt(2) == 0)
+        if(ThreadLocalRandom.current().nextInt(2) == 0)
         {
             setFirstTurn(PLAYER_TURN);
         }
@@ -109,29 +222,52 @@ public class TicTacToe implements Cloneable
      */
     public String drawBoard()
     {
-        String toReturn = "";
+        char[] toReturn = new char[10];
 
-        for(char space : grid)
+        for(int i = 0; i < 9; i++)
         {
-            if(space == PLAYER_MARK) toReturn += "1";
-            else if(space == COMPUTER_MARK) toReturn += "2";
-            else toReturn += "-";
+            int bit = 1 << i;
+
+            if((playerBoard & bit) != 0) toReturn[i] = '1';
+            else if((computerBoard & bit) != 0) toReturn[i] = '2';
+            else toReturn[i] = '-';
         }
 
-        return toReturn + "\n";
+        toReturn[9] = '\n';
+
+        return new String(toReturn);
+    }
+
+    /**
+     * Puts the line drawBoard() returns into buffer.
+     */
+    public void drawBoard(ByteBuffer buffer)
+    {
+        for(int i = 0; i < 9; i++)
+        {
+            int bit = 1 << i;
+
+            if((playerBoard & bit) != 0) buffer.put((byte)'1');
+            else if((computerBoard & bit) != 0) buffer.put((byte)'2');
+            else buffer.put((byte)'-');
+        }
+
+        buffer.put((byte)'\n');
     }
 
 
     /**
      * Returns an array containing a list of all possible moves for this game state.
+     * moves[i] will contain a 0 if grid i is unavailable or a 1 if it is available.
      */
     public int[] generateMoves()
     {
-        // Generate the list of possible moves and store them in moves.
+        int[] moves = new int[9];
+        int free = freeGrids();
+
         for(int i = 0; i < moves.length; i++)
         {
-            // If it is not taken, mark the square as available.  Otherwise, it is unavailable.
-            moves[i] = (grid[i] == NOBODY_MARK) ? 1 : 0;
+            moves[i] = (free >> i) & 1;
         }
 
         return moves;
@@ -142,25 +278,14 @@ public class TicTacToe implements Cloneable
      */
     public int[] generateLegalMoves()
     {
-        // Create the list of legal moves from the move set.
-        int[] legalMoves = new int[0];
+        int free = freeGrids();
+        int[] legalMoves = new int[Integer.bitCount(free)];
 
-        for(int i = 0; i < moves.length; i++)
+        // Peel off the lowest free grid until none remain.
+        for(int i = 0; free != 0; i++)
         {
-            // If the move is available, add it to the legal moves array.
-            if(moves[i] == 1)
-            {
-                // Increase size of the legal moves array.
-                int[] tempLegalMoves = legalMoves;
-                legalMoves = new int[tempLegalMoves.length + 1];
-
-                for(int j = 0; j < tempLegalMoves.length; j++)
-                {
-                    legalMoves[j] = tempLegalMoves[j];
-                }
-
-                legalMoves[legalMoves.length - 1] = i;
-            }
+            legalMoves[i] = Integer.numberOfTrailingZeros(free);
+            free &= free - 1;
         }
 
         return legalMoves;
@@ -178,92 +303,411 @@ public class TicTacToe implements Cloneable
         }
 
         // Returns true if the move is available and false if it is not.
-        return moves[move] == 1;
+        return (freeGrids() & (1 << move)) != 0;
+    }
+
+    /**
+     * Returns a mask of the grids nobody has taken yet.
+     */
+    private int freeGrids()
+    {
+        return ~(playerBoard | computerBoard) & FULL_BOARD;
     }
 
     /**
      * The method through which the computer generates its move.  This method will also make the move
      * for the computer.
      */
-    public void computerMove() throws CloneNotSupportedException
+    public void computerMove()
     {
         int computerMove = bestMove();
 
         placePiece(COMPUTER_TURN, computerMove);
     }
 
+    /**
+     * Makes the best move the computer can find within budget.
+     */
+    public void computerMove(Duration budget)
+    {
+        placePiece(COMPUTER_TURN, bestMove(budget));
+    }
+
     /**
      * Attempts to determine the best move for the computer to make based on the current board state.
-     * Returns the best possible move as an integer.
+     * Returns the best possible move as an integer.  When several moves are equally good, the lowest
+     * grid is chosen.
+     *
+     * The move is looked up in the tablebase when one is loaded, then in the move cache, and searched
+     * for (and cached) otherwise.
      * @return int
-     * @throws CloneNotSupportedException should the TicTacToe objects not clone successfully.
      */
-    public int bestMove() throws CloneNotSupportedException
+    public int bestMove()
+    {
+        // The event is only filled in and committed here, so it costs nothing while recording is off.
+        GameEvents.Search event = new GameEvents.Search();
+        event.begin();
+
+        String source = "tablebase";
+        int move = tablebaseMove(), depth = 0;
+        long searched = 0;
+
+        if(move < 0)
+        {
+            source = "cache";
+            move = moveCache.get(playerBoard, computerBoard);
+        }
+
+        if(move < 0)
+        {
+            long start = System.nanoTime();
+            nodes = 0;
+            move = searchBestMove(GAME_LEVEL, -1);
+            moveCache.put(playerBoard, computerBoard, bestMoves());
+
+            Metrics.get().recordSearch(nodes, System.nanoTime() - start);
+
+            source = "search";
+            depth = GAME_LEVEL;
+            searched = nodes;
+        }
+
+        if(event.shouldCommit())
+        {
+            event.source = source;
+            event.depth = depth;
+            event.nodes = searched;
+            event.move = move;
+            event.commit();
+        }
+
+        return move;
+    }
+
+    /**
+     * Returns the best move the computer can find within budget, from the tablebase if one is loaded.
+     *
+     * The search looks one move further ahead at a time, trying the previous choice first, until it has
+     * looked to the end of the game or the budget runs out.  The move chosen by the deepest search that
+     * finished is returned, so the answer is bestMove()'s whenever the budget allows a full search.
+     */
+    public int bestMove(Duration budget)
+    {
+        GameEvents.Search event = new GameEvents.Search();
+        event.begin();
+
+        String source = "tablebase";
+        int move = tablebaseMove(), depth = 0;
+        long searched = 0;
+
+        if(move < 0)
+        {
+            source = "cache";
+            move = moveCache.get(playerBoard, computerBoard);
+        }
+
+        if(move < 0)
+        {
+            long start = System.nanoTime();
+            move = searchWithin(budget);
+
+            Metrics.get().recordSearch(nodes, System.nanoTime() - start);
+
+            source = "search";
+            depth = depthReached;
+            searched = nodes;
+        }
+
+        if(event.shouldCommit())
+        {
+            event.source = source;
+            event.depth = depth;
+            event.nodes = searched;
+            event.move = move;
+            event.commit();
+        }
+
+        return move;
+    }
+
+    /**
+     * Returns the move bestMove(budget) would make, or -1 if cancelled is set before it is found.
+     * Cancelling is noticed as often as the deadline is, so the search stops within a few hundred positions.
+     */
+    public int speculativeMove(Duration budget, AtomicBoolean cancelled)
+    {
+        GameEvents.Search event = new GameEvents.Search();
+        event.begin();
+
+        String source = "tablebase";
+        int move = tablebaseMove(), depth = 0;
+        long searched = 0;
+
+        if(move < 0)
+        {
+            source = "cache";
+            move = moveCache.get(playerBoard, computerBoard);
+        }
+
+        if(move < 0)
+        {
+            this.cancelled = cancelled;
+
+            try
+            {
+                move = searchWithin(budget);
+            }
+
+            finally
+            {
+                this.cancelled = NEVER_CANCELLED;
+            }
+
+            source = "search";
+            depth = depthReached;
+            searched = nodes;
+        }
+
+        if(cancelled.get())
+        {
+            return -1;
+        }
+
+        if(event.shouldCommit())
+        {
+            event.source = source;
+            event.depth = depth;
+            event.nodes = searched;
+            event.move = move;
+            event.speculative = true;
+            event.commit();
+        }
+
+        return move;
+    }
+
+    /**
+     * Does the search described by bestMove(budget), leaving the positions it visited in nodes and the
+     * depth it finished in depthReached.
+     */
+    private int searchWithin(Duration budget)
+    {
+        nodes = 0;
+        deadline = System.nanoTime() + budget.toNanos();
+
+        try
+        {
+            // A search of level 0 judges each move without looking further, and can't run out of time.
+            int best = searchBestMove(0, -1);
+            depthReached = 0;
+
+            // The search below every root move sees all free grids by the time level reaches them.
+            for(int level = 1; level < Integer.bitCount(freeGrids()); level++)
+            {
+                int move = searchBestMove(level, best);
+
+                if(outOfTime)
+                {
+                    break;
+                }
+
+                best = move;
+                depthReached = level;
+            }
+
+            // Only a search that saw to the end of the game is worth keeping.
+            if(!outOfTime)
+            {
+                int bestMoves = bestMoves();
+
+                if(!outOfTime)
+                {
+                    moveCache.put(playerBoard, computerBoard, bestMoves);
+                }
+            }
+
+            return best;
+        }
+
+        finally
+        {
+            deadline = Long.MAX_VALUE;
+            outOfTime = false;
+        }
+    }
+
+    /**
+     * Returns the computer's best move from the tablebase, or -1 if none is loaded or it doesn't have it.
+     */
+    private int tablebaseMove()
+    {
+        Tablebase loaded = tablebase;
+
+        return (loaded != null) ? loaded.bestMove(playerBoard, computerBoard) : -1;
+    }
+
+    /**
+     * Returns a mask of every move for the computer that is as good as the best, searched to the end of
+     * the game.  This follows a search for the best move, so the transposition table holds most of what
+     * it needs.  Returns 0 if the deadline passes first.
+     */
+    private int bestMoves()
+    {
+        int toReturn = 0, bestGuessValue = LOWEST_GUESS - 1;
+
+        for(int free = freeGrids(); free != 0; free &= free - 1)
+        {
+            int move = Integer.numberOfTrailingZeros(free);
+
+            placePiece(COMPUTER_TURN, move);
+            int currentGuessValue = alphaBeta(GAME_LEVEL, PLAYER_TURN, LOWEST_GUESS, HIGHEST_GUESS);
+            undoMove(move);
+
+            if(outOfTime)
+            {
+                return 0;
+            }
+
+            if(currentGuessValue > bestGuessValue)
+            {
+                bestGuessValue = currentGuessValue;
+                toReturn = 0;
+            }
+
+            if(currentGuessValue == bestGuessValue)
+            {
+                toReturn |= 1 << move;
+            }
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * Searches for the best move for the computer, as described by bestMove().
+     */
+    int searchBestMove()
+    {
+        return searchBestMove(GAME_LEVEL, -1);
+    }
+
+    /**
+     * Searches level moves beyond each of the computer's moves for the best one, trying firstMove first
+     * if it is legal.  When several moves are equally good, the lowest grid is chosen.
+     *
+     * The search plays moves on this game and takes them back again, so the board is left as it was.
+     * If the deadline passes, outOfTime is set and the move returned means nothing.
+     */
+    private int searchBestMove(int level, int firstMove)
     {
         /**
          * Keeps track of the guess value of the best move and the guess value
          * of the current move being examined.
          */
-        int bestGuessValue, currentGuessValue;
+        int bestGuessValue = LOWEST_GUESS - 1, currentGuessValue;
 
         /**
          * Stores the best move found so far and the next move to try.
          */
-        int best, tryMove;
+        int best = -1, tryMove;
 
         /**
-         * Holds a copy of the current game.
+         * Stores the set of legal moves for this board state, most promising first.
          */
-        TicTacToe tempSituation;
+        int[] rootMoves = orderedMoves[Integer.bitCount(playerBoard | computerBoard)];
+        int numMoves = orderMoves(COMPUTER_TURN, rootMoves);
 
-        /**
-         * Stores the set of legal moves for this board state.
-         */
-        int[] legalMoves;
+        // Try the move a shallower search chose first; it is likely still the best.
+        for(int i = 1; i < numMoves; i++)
+        {
+            if(rootMoves[i] == firstMove)
+            {
+                System.arraycopy(rootMoves, 0, rootMoves, 1, i);
+                rootMoves[0] = firstMove;
+                break;
+            }
+        }
 
+        if(parallelSearch && Integer.bitCount(freeGrids()) >= PARALLEL_THRESHOLD)
+        {
+            return parallelBestMove(level, rootMoves, numMoves);
+        }
 
-        // Copy the current boardstate and generate a list of legal moves the computer will attempt to make.
-        tempSituation = this.clone();
-        legalMoves = tempSituation.generateLegalMoves();
+        for(int i = 0; i < numMoves; i++)
+        {
+            tryMove = rootMoves[i];
 
+            // Moves are not tried in grid order, so a lower grid only has to match the best value so far
+            // while a higher grid has to beat it.  Anything at or below the window is of no interest.
+            int alpha = (tryMove < best) ? bestGuessValue - 1 : bestGuessValue;
 
-        // Start determining the best move at the first legal move in the set.  Place the piece and determine an
-        // estimate of how likely the computer is to win the game by making it.
-        tryMove = legalMoves[0];
+            // Nothing beats a win.
+            if(alpha >= HIGHEST_GUESS)
+            {
+                continue;
+            }
 
-        tempSituation.placePiece(COMPUTER_TURN, tryMove);
-        bestGuessValue = tempSituation.bestGuess(GAME_LEVEL);
+            placePiece(COMPUTER_TURN, tryMove);
+            currentGuessValue = alphaBeta(level, PLAYER_TURN, alpha, HIGHEST_GUESS);
+            undoMove(tryMove);
 
-        // Track the best move the computer can make.  For now, it has to be the first legal move.
-        best = tryMove;
+            if(outOfTime)
+            {
+                return best;
+            }
 
+            if(currentGuessValue > bestGuessValue || (currentGuessValue == bestGuessValue && tryMove < best))
+            {
+                bestGuessValue = currentGuessValue;
+                best = tryMove;
+            }
+        }
 
-        // Try every remaining possible, legal move to determine which one bestGuess likes the most based on the
-        // current board state.
-        int currentMoveIndex = 1;
-        while(currentMoveIndex < legalMoves.length)
+        return best;
+    }
+
+    /**
+     * Searches each of the root moves as its own task on the common ForkJoinPool, with the calling
+     * thread taking a share of them.  Every move gets its own copy of the game and is searched with
+     * the full window, so its value is exact and the move chosen is the one searchBestMove() would.
+     */
+    private int parallelBestMove(int level, int[] rootMoves, int numMoves)
+    {
+        int[] guessValues = new int[numMoves];
+        TicTacToe[] copies = new TicTacToe[numMoves];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numMoves];
+
+        for(int i = 0; i < numMoves; i++)
         {
-            // Erase the previously placed piece and try the remaining legal moves to determine which gives the best
-            // result.
-            tempSituation = this.clone();
-            tryMove = legalMoves[currentMoveIndex];
+            int index = i;
+            TicTacToe copy = new TicTacToe();
+            copy.playerBoard = playerBoard;
+            copy.computerBoard = computerBoard | (1 << rootMoves[i]);
+            copy.deadline = deadline;
+            copy.cancelled = cancelled;
+            copies[i] = copy;
+
+            tasks[i] = ForkJoinTask.adapt(() ->
+                    guessValues[index] = copy.alphaBeta(level, PLAYER_TURN, LOWEST_GUESS, HIGHEST_GUESS));
+        }
 
-            tempSituation.placePiece(COMPUTER_TURN, tryMove);
+        ForkJoinTask.invokeAll(tasks);
 
-            // Determine the chance of the computer winning by making this move.
-            currentGuessValue = tempSituation.bestGuess(GAME_LEVEL);
+        for(TicTacToe copy : copies)
+        {
+            nodes += copy.nodes;
+            outOfTime |= copy.outOfTime;
+        }
+
+        int best = -1, bestGuessValue = LOWEST_GUESS - 1;
 
-            // Choose the move that gives the computer the greatest chance of winning.
-            // Do so by taking the move with the highest guess value (closest to winning 100) if computer turn.
-            // Otherwise, "block" the move that would allow the player to win (closest to 0).
-            if((tempSituation.getWhoseTurn() == COMPUTER_TURN && currentGuessValue > bestGuessValue) ||
-                    tempSituation.getWhoseTurn() != COMPUTER_TURN && currentGuessValue < bestGuessValue)
+        for(int i = 0; i < numMoves; i++)
+        {
+            if(guessValues[i] > bestGuessValue || (guessValues[i] == bestGuessValue && rootMoves[i] < best))
             {
-                bestGuessValue = currentGuessValue;
-                best = tryMove;
+                bestGuessValue = guessValues[i];
+                best = rootMoves[i];
             }
-
-            currentMoveIndex++;
         }
 
         return best;
@@ -272,7 +716,7 @@ public class TicTacToe implements Cloneable
     /**
      * Used by bestMove to examine the benefit a move will have based on the current board state.
      * Returns an integer value describing how likely the computer is to win based on the invoking
-     * game's board state.
+     * game's board state, assuming the player moves next and both sides play their best from then on.
      *
      * 100 - computer has won
      * 50  - tied game
@@ -281,165 +725,213 @@ public class TicTacToe implements Cloneable
      * level describes how much further the game will play in order to determine the best possible move.
      * Values for level range from 0-8, with 8 being technically unbeatable.
      */
-    public int bestGuess(int level) throws CloneNotSupportedException
+    public int bestGuess(int level)
     {
-        /**
-         * Keeps track of the guess value of the best move and the guess value
-         * of the current move being examined.
-         */
-        int bestGuessValue, currentGuessValue;
-
-        /**
-         * Stores the next move to try.
-         */
-        int tryMove;
-
-        /**
-         * Holds a copy of the current game.
-         */
-        TicTacToe tempSituation;
-
-        /**
-         * Holds a copy of the legal moves for this game.
-         */
-        int[] legalMoves = this.generateLegalMoves();
-
+        return alphaBeta(level, PLAYER_TURN, LOWEST_GUESS, HIGHEST_GUESS);
+    }
 
+    /**
+     * Searches level moves ahead with alpha-beta pruning, with player ({player}_TURN) making the next move.
+     * The computer maximizes and the player minimizes the guess value.
+     *
+     * The result is exact when it falls strictly between alpha and beta.  Otherwise it is only a bound:
+     * a result at or below alpha means the true value is no higher, and a result at or above beta means
+     * it is no lower.
+     */
+    private int alphaBeta(int level, int player, int alpha, int beta)
+    {
         // If we're at the base level or the game is over, return how well the computer has done.
-        if((level == 0 || this.isOver()))
+        if(level == 0 || isOver())
         {
             return judge();
         }
 
-        // Copy the current game.
-        tempSituation = this.clone();
+        // Give up once the deadline has passed or the search is cancelled.  Nothing found from here on is stored.
+        if((++nodes & (CLOCK_INTERVAL - 1)) == 0 && (System.nanoTime() > deadline || cancelled.get()))
+        {
+            outOfTime = true;
+        }
 
-        // If the level is even, the computer will be trying a move.
-        if(level % 2 == 0)
+        if(outOfTime)
         {
-            tempSituation.setWhoseTurn(COMPUTER_TURN);
+            return LOWEST_GUESS;
         }
 
-        // If the level is odd, the player will be trying a move.
-        else
+        // A search deeper than the number of free grids sees the same positions as one that isn't.
+        int depth = Math.min(level, Integer.bitCount(freeGrids()));
+        int key = TranspositionTable.key(playerBoard, computerBoard, player == COMPUTER_TURN, depth);
+
+        // Use an earlier result for this position if it settles the value within the window.
+        int entry = table.probe(key);
+        if(entry != 0)
         {
-            tempSituation.setWhoseTurn(PLAYER_TURN);
+            int value = TranspositionTable.value(entry);
+
+            switch(TranspositionTable.kind(entry))
+            {
+                case TranspositionTable.EXACT:
+                    return value;
+                case TranspositionTable.LOWER_BOUND:
+                    if(value >= beta) return value;
+                    break;
+                case TranspositionTable.UPPER_BOUND:
+                    if(value <= alpha) return value;
+                    break;
+            }
         }
 
+        int originalAlpha = alpha, originalBeta = beta;
 
-        // Place the first legal move and determine how good this move is for the computer.
-        tryMove = legalMoves[0];
-        tempSituation.placePiece(tempSituation.getWhoseTurn(), tryMove);
-        bestGuessValue = tempSituation.bestGuess(level - 1);
+        int[] moves = orderedMoves[Integer.bitCount(playerBoard | computerBoard)];
+        int numMoves = orderMoves(player, moves);
+        int nextPlayer = (player == PLAYER_TURN) ? COMPUTER_TURN : PLAYER_TURN;
 
-        // Run through the remaining legal moves.
-        int currentMoveIndex = 1;
-        while(currentMoveIndex < legalMoves.length)
+        int bestGuessValue = (player == COMPUTER_TURN) ? LOWEST_GUESS : HIGHEST_GUESS;
+
+        for(int i = 0; i < numMoves; i++)
         {
-            // Erase the previous move and try the next available one.
-            tempSituation = this.clone();
-            tryMove = legalMoves[currentMoveIndex];
-            tempSituation.placePiece(tempSituation.getWhoseTurn(), tryMove);
+            placePiece(player, moves[i]);
+            int currentGuessValue = alphaBeta(level - 1, nextPlayer, alpha, beta);
+            undoMove(moves[i]);
 
-            currentGuessValue = tempSituation.bestGuess(level - 1);
+            if(outOfTime)
+            {
+                return bestGuessValue;
+            }
 
-            // If it is the player's turn, we want to consider taking this move to block him or her from winning.
-            if(tempSituation.getWhoseTurn() == PLAYER_TURN)
+            // The computer takes the move that gives it the best chance of winning...
+            if(player == COMPUTER_TURN)
             {
                 bestGuessValue = Math.max(bestGuessValue, currentGuessValue);
+                alpha = Math.max(alpha, currentGuessValue);
             }
 
-            // If it is the computer's turn, we want to take the move that can win.
+            // ...while the player takes the move that leaves the computer the worst.
             else
             {
                 bestGuessValue = Math.min(bestGuessValue, currentGuessValue);
+                beta = Math.min(beta, currentGuessValue);
             }
 
-            currentMoveIndex++;
+            // The other side already has a better option elsewhere, so the rest of the moves don't matter.
+            if(alpha >= beta)
+            {
+                break;
+            }
+        }
+
+        if(bestGuessValue <= originalAlpha)
+        {
+            table.store(key, bestGuessValue, TranspositionTable.UPPER_BOUND);
+        }
+
+        else if(bestGuessValue >= originalBeta)
+        {
+            table.store(key, bestGuessValue, TranspositionTable.LOWER_BOUND);
+        }
+
+        else
+        {
+            table.store(key, bestGuessValue, TranspositionTable.EXACT);
         }
 
         return bestGuessValue;
     }
 
     /**
-     * Updates the game so player ({player}_TURN) makes a move at the specified
-     * point in the grid.
+     * Fills orderedMoves with the legal moves for player ({player}_TURN), most promising first:
+     * moves that win immediately, then moves that block the opponent's win, then the rest in
+     * MOVE_ORDER.  Returns the number of moves written.
      */
-    public void placePiece(int player, int move)
+    private int orderMoves(int player, int[] orderedMoves)
     {
-        grid[move] = (player == PLAYER_TURN) ? PLAYER_MARK : COMPUTER_MARK;
+        int free = freeGrids();
+        int own = (player == PLAYER_TURN) ? playerBoard : computerBoard;
+        int other = (player == PLAYER_TURN) ? computerBoard : playerBoard;
+
+        int wins = COMPLETIONS[own] & free;
+        int blocks = COMPLETIONS[other] & free & ~wins;
 
-        numMoves++;
+        int numMoves = appendMoves(wins, orderedMoves, 0);
+        numMoves = appendMoves(blocks, orderedMoves, numMoves);
+        numMoves = appendMoves(free & ~wins & ~blocks, orderedMoves, numMoves);
 
-        // Generate the new set of moves taken/not taken in the game.
-        generateMoves();
+        return numMoves;
     }
 
     /**
-     * Returns an integer value based on examining the state of the game:
-     * 0 - game is on-going
-     * 1 - player has won
-     * 2 - computer has won
-     * 3 - game is a tie
+     * Fills moves with the legal moves for player ({player}_TURN), ordered as the search tries them.
      */
-    public int result()
+    public int likelyMoves(int player, int[] moves)
     {
-        // First check the columns to see if there are any winners.
-        for(int i = 0; i < 3; i++)
-        {
-            // Has the player won?
-            if(grid[i] == PLAYER_MARK && grid[i + 3] == PLAYER_MARK && grid[i + 6] == PLAYER_MARK)
-            {
-                return 1;
-            }
-
-            // Has the computer won?
-            else if(grid[i] == COMPUTER_MARK && grid[i + 3] == COMPUTER_MARK && grid[i + 6] == COMPUTER_MARK)
-            {
-                return 2;
-            }
-        }
+        return orderMoves(player, moves);
+    }
 
-        // Then check rows for any winners.
-        for(int i = 0; i <= 6; i += 3)
+    /**
+     * Appends the grids in mask to orderedMoves (starting at index numMoves) in MOVE_ORDER.
+     * Returns the new number of moves.
+     */
+    private static int appendMoves(int mask, int[] orderedMoves, int numMoves)
+    {
+        for(int move : MOVE_ORDER)
         {
-            // Has the player won?
-            if(grid[i] == PLAYER_MARK && grid[i + 1] == PLAYER_MARK && grid[i + 2] == PLAYER_MARK)
-            {
-                return 1;
-            }
-
-            // Has the computer won?
-            if(grid[i] == COMPUTER_MARK && grid[i + 1] == COMPUTER_MARK && grid[i + 2] == COMPUTER_MARK)
+            if((mask & (1 << move)) != 0)
             {
-                return 2;
+                orderedMoves[numMoves++] = move;
             }
         }
 
-        // Finally, check the diagonals.
-        if(grid[0] == PLAYER_MARK && grid[4] == PLAYER_MARK && grid[8] == PLAYER_MARK)
+        return numMoves;
+    }
+
+    /**
+     * Updates the game so player ({player}_TURN) makes a move at the specified
+     * point in the grid.
+     */
+    public void placePiece(int player, int move)
+    {
+        if(player == PLAYER_TURN)
         {
-            return 1;
+            playerBoard |= 1 << move;
         }
 
-        else if(grid[2] == PLAYER_MARK && grid[4] == PLAYER_MARK && grid[6] == PLAYER_MARK)
+        else
         {
-            return 1;
+            computerBoard |= 1 << move;
         }
+    }
 
+    /**
+     * Takes back the piece at the specified point in the grid, leaving it free.
+     */
+    public void undoMove(int move)
+    {
+        playerBoard &= ~(1 << move);
+        computerBoard &= ~(1 << move);
+    }
 
-        if(grid[0] == COMPUTER_MARK && grid[4] == COMPUTER_MARK && grid[8] == COMPUTER_MARK)
+    /**
+     * Returns an integer value based on examining the state of the game:
+     * 0 - game is on-going
+     * 1 - player has won
+     * 2 - computer has won
+     * 3 - game is a tie
+     */
+    public int result()
+    {
+        // Look up whether either side has completed a line.  The player is checked first.
+        if(WINNING[playerBoard])
         {
-            return 2;
+            return 1;
         }
 
-        else if(grid[2] == COMPUTER_MARK && grid[4] == COMPUTER_MARK && grid[6] == COMPUTER_MARK)
+        if(WINNING[computerBoard])
         {
             return 2;
         }
 
-        // If there are 9 moves at this point, the game is a draw.
-        if(numMoves == 9)
+        // If the board is full at this point, the game is a draw.
+        if((playerBoard | computerBoard) == FULL_BOARD)
         {
             return 3;
         }
@@ -484,6 +976,64 @@ public class TicTacToe implements Cloneable
     }
 
 
+    /**
+     * Sets the tablebase bestMove() answers from, or null to search every move.
+     */
+    public static void setTablebase(Tablebase tablebase)
+    {
+        TicTacToe.tablebase = tablebase;
+    }
+
+    /**
+     * Sets whether searches over at least PARALLEL_THRESHOLD free grids split their root moves over the
+     * common ForkJoinPool.  Either way, the same move is chosen.
+     */
+    public static void setParallelSearch(boolean parallelSearch)
+    {
+        TicTacToe.parallelSearch = parallelSearch;
+    }
+
+    /**
+     * Returns the board packed into 18 bits: bit i is set if the player holds grid i, and bit i + 9 if
+     * the computer does.
+     */
+    public int getPackedBoard()
+    {
+        return playerBoard | (computerBoard << 9);
+    }
+
+    /**
+     * Returns the mask of the grids taken by the player.
+     */
+    int getPlayerBoard()
+    {
+        return playerBoard;
+    }
+
+    /**
+     * Returns the mask of the grids taken by the computer.
+     */
+    int getComputerBoard()
+    {
+        return computerBoard;
+    }
+
+    /**
+     * Returns the transposition table shared by every search, e.g. to report its hit rate.
+     */
+    public static TranspositionTable getTranspositionTable()
+    {
+        return table;
+    }
+
+    /**
+     * Returns the move cache shared by every game, e.g. to report its hit rate.
+     */
+    public static MoveCache getMoveCache()
+    {
+        return moveCache;
+    }
+
     /**
      * Return the int value of who controls the current turn.
      */
@@ -521,7 +1071,7 @@ public class TicTacToe implements Cloneable
      */
     public int[] getMoves()
     {
-        return moves;
+        return generateMoves();
     }
 
     /**
@@ -15,6 +15,8 @@ import java.awt.event.ActionListener;
 import javax.swing.*;
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TicTacToeGUI
 {
@@ -25,6 +27,9 @@ public class TicTacToeGUI
     private final String PLAYER_ICON   = "resources/green.jpg";
     private final String COMPUTER_ICON = "resources/yellow.jpg";
 
+    // The icons, each decoded once and shared by every button.
+    private final ImageIcon freeIcon, playerIcon, computerIcon;
+
     private int winCount = 0, lossCount = 0, tieCount = 0;
 
     private JFrame frame;
@@ -32,22 +37,29 @@ public class TicTacToeGUI
     private JPanel buttonPanel, optionsPanel;
     private JButton[] buttons;
     
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    // How the game is reached: the server, or an engine in this process.
+    private GameTransport transport;
+
+    // Whether to speak the binary protocol (see BinaryProtocol) to the server.
+    private final boolean binary;
+
+    // Writes to the game in the order asked, so the GUI never waits on the network or the engine.
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("TTT sender").factory());
+
+    // The last board the server sent, shown again if the server won't play the user's move.
+    private String lastGridState;
 
     // Handles a click on an enabled grid button.
     private ActionListener gridClickListener = new ActionListener()
     {
-        // Transmit the user's desired grid to the server.
+        // Transmit the user's desired grid to the server.  The grid stays disabled until the server answers.
         public void actionPerformed(ActionEvent actionEvent)
         {
             String buttonNumber = actionEvent.getActionCommand();
             System.out.println("Sending to server: " + buttonNumber);
-            out.println(buttonNumber + "\n");
 
-            // Process any commands sent by the server (which should be a gridStatus string).
-            processServerCommands();
+            awaitServer();
+            send(buttonNumber);
         }
     };
 
@@ -62,20 +74,23 @@ public class TicTacToeGUI
             // string to the server then close the GUI.
             if(buttonCommand.equals("close"))
             {
-                try
-                {
-                    out.println("#CG\n");
-                    out.close();
-                    in.close();
-                    socket.close();
-                }
-                
-                catch(IOException e)
-                {
-                    System.err.println("Error disconnecting from the TTT server.");
-                }
+                send("#CG");
 
-                System.exit(0);
+                // Close once the termination string has gone.
+                sender.execute(() ->
+                {
+                    try
+                    {
+                        transport.close();
+                    }
+
+                    catch(IOException e)
+                    {
+                        System.err.println("Error disconnecting from the TTT server.");
+                    }
+
+                    System.exit(0);
+                });
             }
             
             // Otherwise, the user desires a new game.
@@ -83,8 +98,8 @@ public class TicTacToeGUI
             else
             {
                 showGrid();
-                out.println("#NG\n");
-                processServerCommands();
+                awaitServer();
+                send("#NG");
             }
         }
     };
@@ -97,28 +112,28 @@ public class TicTacToeGUI
      */
     public void run() throws InterruptedException
     {
-        // Connect to the TicTacToe server.
-        connectServer();
+        // Connect to the TicTacToe server, unless the game is played in this process.
+        if(transport == null)
+        {
+            connectServer();
+        }
 
         // Load the game's GUI.
-        showGUI();
+        SwingUtilities.invokeLater(this::showGUI);
 
-        // Allow the user to play the game.
-        processServerCommands();
+        // Allow the user to play the game.  The server's commands are read on their own thread and
+        // handed to the event dispatch thread, so the GUI keeps responding while the server thinks.
+        Thread.ofVirtual().name("TTT reader").start(this::readServerCommands);
     }
 
     /**
      * Create a connection to the TTT server defined in the settings.
-     * If successful, create input and output streams to read from and write to
-     * the server.
      */
     private void connectServer()
     {
         try
         {
-            socket = new Socket(SERVER_IP, SERVER_PORT);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            transport = new SocketTransport(SERVER_IP, SERVER_PORT, binary);
         }
 
         catch(UnknownHostException e)
@@ -137,11 +152,56 @@ public class TicTacToeGUI
     }
 
     /**
-     * Processes any commands issued by the server.
+     * Sends a move or command to the game.  It is written by the sender thread, so this returns straight away.
+     */
+    private void send(String message)
+    {
+        sender.execute(() ->
+        {
+            try
+            {
+                transport.send(message);
+            }
+
+            catch(IOException e)
+            {
+                System.err.println("Error sending to the TTT server.");
+            }
+        });
+    }
+
+    /**
+     * Reads the server's commands until the connection closes, handing each to the event dispatch thread.
+     */
+    private void readServerCommands()
+    {
+        try
+        {
+            String serverCommand;
+
+            while((serverCommand = transport.receive()) != null)
+            {
+                String command = serverCommand;
+                SwingUtilities.invokeLater(() -> processServerCommand(command));
+            }
+        }
+
+        catch(IOException e)
+        {
+            System.err.println("Error reading commands from the server.");
+        }
+
+        System.err.println("The connection to the TTT server has closed.");
+    }
+
+    /**
+     * Processes a command issued by the server.  This runs on the event dispatch thread.
      *
      * possible commands:
      * a 9 character gridStatus -- see updateGrid()
      *  => expects client to return an integer 0-8 representing the user's move
+     * "#E" -- the user's move can't be played; the board is unchanged
+     *  => expects another move
      * -----
      * "#T" -- game is a tie
      * "#P" -- the player won the game
@@ -149,77 +209,84 @@ public class TicTacToeGUI
      *  => expects "#CG" to end the game or "#NG" to create a new game
      *
      */
-    private void processServerCommands()
+    private void processServerCommand(String serverCommand)
     {
-        try
+        System.out.println("Processing the server's command...");
+        System.err.println("Message from server: " + serverCommand);
+
+        // Process any gridStatus strings.
+        if(serverCommand.charAt(0) != '#')
         {
-            System.out.println("Processing the server's command...");
+            updateGrid(serverCommand);
+        }
 
-            String serverCommand;
-            serverCommand = in.readLine();
-            System.err.println("Message from server: " + serverCommand);
+        // The move wasn't accepted.  The board is as it was, so the user can simply choose again.
+        else if(serverCommand.equals("#E"))
+        {
+            System.err.println("The server could not play that move.");
+            updateGrid(lastGridState);
+        }
+
+        // The game has ended.  Show the user his or her statistics.
+        else
+        {
+            showOptions();
 
-            // Process any gridStatus strings.
-            if(serverCommand.charAt(0) != '#')
+            // Alert the user to his or her result.
+            String title, text;
+
+            if(serverCommand.equals("#T"))
             {
-                updateGrid(serverCommand);
+                tieCount++;
+                title = "will and fear are balanced.!";
+                text = "This battle ended in a draw.";
             }
 
-            // The game has ended.  Show the user his or her statistics.
-            else
+            else if(serverCommand.equals("#P"))
             {
-                showOptions();
-
-                // Alert the user to his or her result.
-                String title, text;
-
-                if(serverCommand.equals("#T"))
-                {
-                    tieCount++;
-                    title = "will and fear are balanced.!";
-                    text = "This battle ended in a draw.";
-                }
-
-                else if(serverCommand.equals("#P"))
-                {
-                    winCount++;
-                    title = "the force of will triumphs!";
-                    text = "You have won this battle.";
-                }
-
-                else
-                {
-                    lossCount++;
-                    title = "you have given into fear!";
-                    text = "You have lost this battle.";
-                }
+                winCount++;
+                title = "the force of will triumphs!";
+                text = "You have won this battle.";
+            }
 
-                text += "\nwins: " + winCount + ", ties: " + tieCount + ", losses: " + lossCount;
+            else
+            {
+                lossCount++;
+                title = "you have given into fear!";
+                text = "You have lost this battle.";
+            }
 
+            text += "\nwins: " + winCount + ", ties: " + tieCount + ", losses: " + lossCount;
 
-                JOptionPane.showMessageDialog(null, text, title, JOptionPane.PLAIN_MESSAGE);
-            }
 
-            System.out.println("==> Control has returned to the user.");
-        }
-        
-        catch(IOException e)
-        {
-            System.err.println("Error reading commands from the server.");
+            JOptionPane.showMessageDialog(null, text, title, JOptionPane.PLAIN_MESSAGE);
         }
+
+        System.out.println("==> Control has returned to the user.");
     }
 
 
     /**
      * Show the user the game's GUI.
-     * @throws InterruptedException
      */
-    private void showGUI() throws InterruptedException
+    private void showGUI()
     {
         showGrid();
+        awaitServer();
         frame.setVisible(true);
     }
 
+    /**
+     * Disables the grid while the server's answer is awaited, so the user can't move out of turn.
+     */
+    private void awaitServer()
+    {
+        for(JButton button : buttons)
+        {
+            button.setEnabled(false);
+        }
+    }
+
     /**
      * Updates the GUI to show the "game over" screen with options to
      * close the game or start a new one.
@@ -229,8 +296,10 @@ public class TicTacToeGUI
         content.remove(buttonPanel);
         content.add(optionsPanel);
         optionsPanel.setVisible(true);
-        optionsPanel.updateUI();
 
+        // Only the content pane's children have changed, so only it needs laying out again.
+        content.revalidate();
+        content.repaint();
     }
 
     /**
@@ -242,13 +311,15 @@ public class TicTacToeGUI
         content.remove(optionsPanel);
         content.add(buttonPanel);
         buttonPanel.setVisible(true);
-        buttonPanel.updateUI();
+
+        content.revalidate();
+        content.repaint();
     }
 
     /**
      * Based on the gridState string, modify the buttons grid to be
      * enabled or disabled and display appropriate pictures for player
-     * and computer.
+     * and computer.  Only the grids that differ from the last board get new pictures.
      *
      * @param gridState
      * gridState is a string with length 9 (representing grid[0] to grid[8])
@@ -263,24 +334,29 @@ public class TicTacToeGUI
         {
             JButton button = buttons[i];
             char state = gridState.charAt(i);
-            
-            // The button is a free space.
+
+            // Free buttons are enabled.  setEnabled() repaints only if that changes.
+            button.setEnabled(state == '-');
+
+            if(lastGridState != null && lastGridState.charAt(i) == state)
+            {
+                continue;
+            }
+
+            // The button is a free space.  It looks the same while disabled waiting on the server.
             if(state == '-')
             {
-                button.setEnabled(true);
+                button.setDisabledIcon(freeIcon);
             }
                 
             // The button is taken.  Determine how to mark the grid (player or computer).
             else
             {
-                String icon;
-                if(state == '1') icon = PLAYER_ICON;
-                else icon = COMPUTER_ICON;
-
-                button.setDisabledIcon(new ImageIcon(getClass().getResource(icon)));
-                button.setEnabled(false);
+                button.setDisabledIcon((state == '1') ? playerIcon : computerIcon);
             }
-        }       
+        }
+
+        lastGridState = gridState;
     }
 
     /**
@@ -288,6 +364,35 @@ public class TicTacToeGUI
      */
     TicTacToeGUI()
     {
+        this(false);
+    }
+
+    /**
+     * Holds our main GUI frame object and its components, speaking the binary protocol to the server if asked to.
+     */
+    TicTacToeGUI(boolean binary)
+    {
+        this(binary, null);
+    }
+
+    /**
+     * Holds our main GUI frame object and its components, playing the game through transport instead of
+     * connecting to the server.
+     */
+    TicTacToeGUI(GameTransport transport)
+    {
+        this(false, transport);
+    }
+
+    private TicTacToeGUI(boolean binary, GameTransport transport)
+    {
+        this.binary = binary;
+        this.transport = transport;
+
+        freeIcon = new ImageIcon(getClass().getResource(FREE_ICON));
+        playerIcon = new ImageIcon(getClass().getResource(PLAYER_ICON));
+        computerIcon = new ImageIcon(getClass().getResource(COMPUTER_ICON));
+
         // The frame holds everything else in the GUI.
         frame = new JFrame("Sinestro Corps War");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -304,7 +409,8 @@ public class TicTacToeGUI
         buttons = new JButton[9];
         for(int i = 0; i < buttons.length; i++)
         {
-            JButton button = new JButton(new ImageIcon(getClass().getResource(FREE_ICON)));
+            JButton button = new JButton(freeIcon);
+            button.setDisabledIcon(freeIcon);
             button.setActionCommand(i + "");
             button.addActionListener(gridClickListener);
 
@@ -0,0 +1,298 @@
+/**
+ * A fixed-size table of search results shared by every TicTacToe search.
+ *
+ * Positions are keyed on their canonical form: the smallest encoding of the board over its
+ * 8 rotations and reflections.  Equivalent positions therefore share one entry and are only
+ * evaluated once.
+ */
+
+package TicTacToe;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TranspositionTable
+{
+    /**
+     * The kinds of values an entry can hold.
+     */
+    // The entry holds the exact value of the position.
+    static final int EXACT = 1;
+
+    // The search failed high: the value is at least the stored value.
+    static final int LOWER_BOUND = 2;
+
+    // The search failed low: the value is at most the stored value.
+    static final int UPPER_BOUND = 3;
+
+    /**
+     * Layout of an entry.  Each entry is packed into a single int, so searches on different threads
+     * can share the table without locking: a racing store can only replace another whole entry.
+     *
+     * bits  0-17: canonical board (player mask, then computer mask)
+     * bit     18: set if the computer moves next
+     * bits 19-22: depth searched
+     * bits 23-29: value
+     * bits 30-31: kind of value (0 for an empty slot)
+     */
+    private static final int KEY_BITS   = 23;
+    private static final int KEY_MASK   = (1 << KEY_BITS) - 1;
+    private static final int VALUE_MASK = 0x7F;
+
+    /**
+     * SYMMETRIES[s][mask] is the 9-bit board mask after applying symmetry s to it.
+     */
+    private static final int[][] SYMMETRIES = new int[8][512];
+
+    /**
+     * INVERSES[s] is the symmetry that undoes symmetry s.
+     */
+    private static final int[] INVERSES = new int[8];
+
+    static
+    {
+        for(int s = 0; s < 8; s++)
+        {
+            // Map every grid to its image under s rotations by 90 degrees, mirrored for s >= 4.
+            int[] image = new int[9];
+
+            for(int i = 0; i < 9; i++)
+            {
+                int row = i / 3, column = i % 3;
+
+                if(s >= 4)
+                {
+                    column = 2 - column;
+                }
+
+                for(int turn = 0; turn < s % 4; turn++)
+                {
+                    int oldRow = row;
+                    row = column;
+                    column = 2 - oldRow;
+                }
+
+                image[i] = row * 3 + column;
+            }
+
+            for(int mask = 0; mask < 512; mask++)
+            {
+                int transformed = 0;
+
+                for(int i = 0; i < 9; i++)
+                {
+                    if((mask & (1 << i)) != 0)
+                    {
+                        transformed |= 1 << image[i];
+                    }
+                }
+
+                SYMMETRIES[s][mask] = transformed;
+            }
+        }
+
+        for(int s = 0; s < 8; s++)
+        {
+            for(int inverse = 0; inverse < 8; inverse++)
+            {
+                // Every symmetry moves a lone corner and a lone edge grid somewhere different.
+                if(SYMMETRIES[inverse][SYMMETRIES[s][0x001]] == 0x001 && SYMMETRIES[inverse][SYMMETRIES[s][0x002]] == 0x002)
+                {
+                    INVERSES[s] = inverse;
+                }
+            }
+        }
+    }
+
+    /**
+     * Buckets of two slots each.  The first slot keeps the deepest search seen for the bucket,
+     * while the second always takes the most recent store.
+     */
+    private final int[] entries;
+    private final int bucketMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    /**
+     * Creates a table with the given number of buckets, which must be a power of two.
+     */
+    public TranspositionTable(int buckets)
+    {
+        if(Integer.bitCount(buckets) != 1)
+        {
+            throw new IllegalArgumentException("The number of buckets must be a power of two: " + buckets);
+        }
+
+        entries = new int[buckets * 2];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Returns the key of a position: its canonical board, who moves next and how deep it is searched.
+     */
+    static int key(int playerBoard, int computerBoard, boolean computerMoves, int depth)
+    {
+        return canonicalBoard(playerBoard, computerBoard) | (computerMoves ? 1 << 18 : 0) | (depth << 19);
+    }
+
+    /**
+     * Returns the smallest encoding of the board over its 8 symmetries.
+     */
+    static int canonicalBoard(int playerBoard, int computerBoard)
+    {
+        int toReturn = Integer.MAX_VALUE;
+
+        for(int[] symmetry : SYMMETRIES)
+        {
+            toReturn = Math.min(toReturn, symmetry[playerBoard] | (symmetry[computerBoard] << 9));
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * Returns the symmetry that turns the board into its canonical form (see canonicalBoard()).
+     */
+    static int canonicalSymmetry(int playerBoard, int computerBoard)
+    {
+        int toReturn = 0, smallest = Integer.MAX_VALUE;
+
+        for(int s = 0; s < SYMMETRIES.length; s++)
+        {
+            int board = SYMMETRIES[s][playerBoard] | (SYMMETRIES[s][computerBoard] << 9);
+
+            if(board < smallest)
+            {
+                smallest = board;
+                toReturn = s;
+            }
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * Returns a 9-bit board mask after applying symmetry to it.
+     */
+    static int transform(int symmetry, int mask)
+    {
+        return SYMMETRIES[symmetry][mask];
+    }
+
+    /**
+     * Returns a 9-bit board mask after undoing symmetry.
+     */
+    static int untransform(int symmetry, int mask)
+    {
+        return SYMMETRIES[INVERSES[symmetry]][mask];
+    }
+
+    /**
+     * Returns the entry stored for key, or 0 if there is none.
+     */
+    int probe(int key)
+    {
+        int slot = slot(key);
+
+        int entry = entries[slot];
+        if(entry == 0 || (entry & KEY_MASK) != key)
+        {
+            entry = entries[slot + 1];
+        }
+
+        if(entry != 0 && (entry & KEY_MASK) == key)
+        {
+            hits.increment();
+            return entry;
+        }
+
+        misses.increment();
+        return 0;
+    }
+
+    /**
+     * Stores the value found for key.  kind is one of EXACT, LOWER_BOUND or UPPER_BOUND.
+     */
+    void store(int key, int value, int kind)
+    {
+        int slot = slot(key);
+        int entry = (kind << 30) | (value << KEY_BITS) | key;
+
+        // Keep the deeper search in the first slot; everything else goes to the second.
+        int deepest = entries[slot];
+        if(deepest == 0 || (deepest & KEY_MASK) == key || depth(key) >= depth(deepest))
+        {
+            entries[slot] = entry;
+        }
+
+        else
+        {
+            entries[slot + 1] = entry;
+        }
+    }
+
+    /**
+     * Returns the value held by an entry.
+     */
+    static int value(int entry)
+    {
+        return (entry >>> KEY_BITS) & VALUE_MASK;
+    }
+
+    /**
+     * Returns the kind of value held by an entry.
+     */
+    static int kind(int entry)
+    {
+        return entry >>> 30;
+    }
+
+    /**
+     * Empties the table.  The hit and miss counters are left as they are.
+     */
+    public void clear()
+    {
+        Arrays.fill(entries, 0);
+    }
+
+    /**
+     * Returns the number of probes that found their position.
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of probes that did not find their position.
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the fraction of probes that found their position.
+     */
+    public double getHitRate()
+    {
+        long found = getHits(), total = found + getMisses();
+
+        return (total == 0) ? 0 : (double)found / total;
+    }
+
+    private int slot(int key)
+    {
+        // Spread the key before masking; canonical boards cluster in the low bits.
+        int hash = key * 0x9E3779B1;
+
+        return ((hash ^ (hash >>> 16)) & bucketMask) * 2;
+    }
+
+    private static int depth(int entryOrKey)
+    {
+        return (entryOrKey >>> 19) & 0xF;
+    }
+}